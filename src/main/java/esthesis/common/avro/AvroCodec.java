@@ -0,0 +1,391 @@
+package esthesis.common.avro;
+
+import esthesis.common.exception.QProcessingException;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.avro.message.SchemaStore;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+
+/**
+ * Avro binary encoding and decoding of the esthesis message types, e.g.
+ * {@link EsthesisDataMessage}, {@link EsthesisCommandRequestMessage} and
+ * {@link EsthesisCommandReplyMessage}, or any other generated Avro record.
+ * <p>
+ * Datum writers are created once per record type and shared, while datum readers, encoders,
+ * decoders and intermediate buffers are created once per thread and reused for every message, so
+ * encoding and decoding allocate little more than the messages themselves. Messages can be
+ * encoded into caller-supplied {@link ByteBuffer}s, and decoded into caller-supplied record
+ * instances.
+ * <p>
+ * Messages can also be encoded using the Avro
+ * <a href="https://avro.apache.org/docs/current/specification/#single-object-encoding">single-object
+ * encoding</a>, which prefixes each message with the fingerprint of the schema that wrote it, so
+ * that consumers can decode messages written with older versions of the schemas without a schema
+ * registry. The encoding is provided by Avro's {@link BinaryMessageEncoder} and
+ * {@link BinaryMessageDecoder}, so messages are interchangeable with those of the
+ * {@code toByteBuffer()} and {@code fromByteBuffer()} methods of the generated record types.
+ * Older writer schemas are made known to a codec once with {@link #registerWriterSchema(Schema)};
+ * decoding then takes a single lookup of the writer fingerprint, with the resolution between the
+ * writer and the reader schema cached per fingerprint.
+ */
+@ApplicationScoped
+public class AvroCodec {
+
+  // The initial size of the per-thread buffer messages are encoded into.
+  private static final int ENCODE_BUFFER_SIZE = 1024;
+
+  // The datum writers, by record type.
+  private static final ClassValue<SpecificDatumWriter<?>> WRITERS = new ClassValue<>() {
+    @Override
+    protected SpecificDatumWriter<?> computeValue(Class<?> type) {
+      return new SpecificDatumWriter<>(type);
+    }
+  };
+
+  // The single-object encoders, by record type.
+  private static final ClassValue<BinaryMessageEncoder<?>> SINGLE_OBJECT_ENCODERS =
+      new ClassValue<>() {
+        @Override
+        protected BinaryMessageEncoder<?> computeValue(Class<?> type) {
+          return new BinaryMessageEncoder<>(SpecificData.getForClass(type),
+              SpecificData.get().getSchema(type));
+        }
+      };
+
+  // The reusable encoding and decoding state of each thread.
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  // The writer schemas known to this codec, in addition to the schemas of the record types.
+  private final SchemaStore.Cache writerSchemas = new SchemaStore.Cache();
+
+  // The single-object decoders of this codec, by record type, resolving the writer schemas.
+  private final ClassValue<BinaryMessageDecoder<?>> singleObjectDecoders = new ClassValue<>() {
+    @Override
+    protected BinaryMessageDecoder<?> computeValue(Class<?> type) {
+      return new BinaryMessageDecoder<>(SpecificData.getForClass(type),
+          SpecificData.get().getSchema(type), writerSchemas);
+    }
+  };
+
+  /**
+   * The reusable encoding and decoding state of a thread.
+   */
+  private static final class State {
+
+    private final ByteArrayOutputStream arrayOut = new ByteArrayOutputStream(ENCODE_BUFFER_SIZE);
+    private final ByteBufferOutputStream bufferOut = new ByteBufferOutputStream();
+    private final ByteBufferInputStream bufferIn = new ByteBufferInputStream();
+    private final Map<Class<?>, SpecificDatumReader<?>> readers = new HashMap<>();
+    private BinaryEncoder arrayEncoder;
+    private BinaryEncoder bufferEncoder;
+    private BinaryDecoder arrayDecoder;
+    private BinaryDecoder bufferDecoder;
+
+    @SuppressWarnings("unchecked")
+    <T> SpecificDatumReader<T> reader(Class<T> type) {
+      return (SpecificDatumReader<T>) readers.computeIfAbsent(type, SpecificDatumReader::new);
+    }
+  }
+
+  /**
+   * An output stream writing into a buffer, which can be re-pointed to a different buffer.
+   */
+  private static final class ByteBufferOutputStream extends OutputStream {
+
+    private ByteBuffer buffer;
+
+    @Override
+    public void write(int b) {
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buffer.put(b, off, len);
+    }
+  }
+
+  /**
+   * An input stream reading from a buffer, which can be re-pointed to a different buffer.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private ByteBuffer buffer;
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return len == 0 ? 0 : -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends SpecificRecord> SpecificDatumWriter<T> writer(T record) {
+    return (SpecificDatumWriter<T>) WRITERS.get(record.getClass());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends SpecificRecord> BinaryMessageEncoder<T> singleObjectEncoder(
+      T record) {
+    return (BinaryMessageEncoder<T>) SINGLE_OBJECT_ENCODERS.get(record.getClass());
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends SpecificRecord> BinaryMessageDecoder<T> singleObjectDecoder(Class<T> type) {
+    return (BinaryMessageDecoder<T>) singleObjectDecoders.get(type);
+  }
+
+  /**
+   * Encodes a message.
+   *
+   * @param record The message to encode.
+   * @return The encoded message.
+   * @throws QProcessingException thrown when the message can not be encoded, e.g. when a required
+   *                              field is not set.
+   */
+  public <T extends SpecificRecord> byte[] encode(T record) {
+    State state = STATE.get();
+    state.arrayOut.reset();
+    try {
+      state.arrayEncoder = EncoderFactory.get().binaryEncoder(state.arrayOut, state.arrayEncoder);
+      writer(record).write(record, state.arrayEncoder);
+      state.arrayEncoder.flush();
+    } catch (IOException | RuntimeException e) {
+      // The encoder may still buffer part of the failed message, which it would otherwise flush
+      // into the next one.
+      state.arrayEncoder = null;
+      throw new QProcessingException("Could not encode message.", e);
+    }
+
+    return state.arrayOut.toByteArray();
+  }
+
+  /**
+   * Encodes a message into a buffer, starting at its current position. On return, the position of
+   * the buffer is advanced past the encoded message. If the message can not be encoded, e.g. as it
+   * does not fit in the remaining bytes of the buffer, the position of the buffer is left
+   * unchanged.
+   *
+   * @param record The message to encode.
+   * @param buffer The buffer to encode the message into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the message does not fit in the buffer.
+   * @throws QProcessingException    thrown when the message can not be encoded otherwise.
+   */
+  public <T extends SpecificRecord> int encode(T record, ByteBuffer buffer) {
+    State state = STATE.get();
+    int start = buffer.position();
+    state.bufferOut.buffer = buffer;
+    try {
+      state.bufferEncoder = EncoderFactory.get()
+          .directBinaryEncoder(state.bufferOut, state.bufferEncoder);
+      writer(record).write(record, state.bufferEncoder);
+    } catch (BufferOverflowException e) {
+      buffer.position(start);
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      buffer.position(start);
+      throw new QProcessingException("Could not encode message.", e);
+    } finally {
+      state.bufferOut.buffer = null;
+    }
+
+    return buffer.position() - start;
+  }
+
+  /**
+   * Decodes a message.
+   *
+   * @param bytes The encoded message.
+   * @param type  The type of the message.
+   * @return The decoded message.
+   */
+  public <T extends SpecificRecord> T decode(byte[] bytes, Class<T> type) {
+    return decode(bytes, 0, bytes.length, type, null);
+  }
+
+  /**
+   * Decodes a message held in a region of a byte array, reusing an existing record instance.
+   *
+   * @param bytes  The bytes holding the encoded message.
+   * @param offset The offset of the first byte of the message.
+   * @param length The number of bytes of the message.
+   * @param type   The type of the message.
+   * @param reuse  The record instance to decode the message into, or null to create a new one.
+   * @return The decoded message, which is the reused instance if one was given.
+   */
+  public <T extends SpecificRecord> T decode(byte[] bytes, int offset, int length,
+      Class<T> type, T reuse) {
+    State state = STATE.get();
+    state.arrayDecoder = DecoderFactory.get()
+        .binaryDecoder(bytes, offset, length, state.arrayDecoder);
+    try {
+      return state.reader(type).read(reuse, state.arrayDecoder);
+    } catch (IOException | RuntimeException e) {
+      throw new QProcessingException("Could not decode message of type " + type.getSimpleName()
+          + ".", e);
+    }
+  }
+
+  /**
+   * Decodes a message from a buffer, starting at its current position. On return, the position of
+   * the buffer is advanced past the decoded message, so that consecutive messages can be decoded
+   * from the same buffer.
+   *
+   * @param buffer The buffer holding the encoded message.
+   * @param type   The type of the message.
+   * @param reuse  The record instance to decode the message into, or null to create a new one.
+   * @return The decoded message, which is the reused instance if one was given.
+   */
+  public <T extends SpecificRecord> T decode(ByteBuffer buffer, Class<T> type, T reuse) {
+    State state = STATE.get();
+    state.bufferIn.buffer = buffer;
+    try {
+      state.bufferDecoder = DecoderFactory.get()
+          .directBinaryDecoder(state.bufferIn, state.bufferDecoder);
+      return state.reader(type).read(reuse, state.bufferDecoder);
+    } catch (IOException | RuntimeException e) {
+      throw new QProcessingException("Could not decode message of type " + type.getSimpleName()
+          + ".", e);
+    } finally {
+      state.bufferIn.buffer = null;
+    }
+  }
+
+  /**
+   * Makes a writer schema known to this codec, so that single-object encoded messages written
+   * with it can be decoded. The schemas of the generated record types are always known.
+   *
+   * @param schema The writer schema, e.g. a previous version of a message schema.
+   * @return The fingerprint of the schema.
+   */
+  public long registerWriterSchema(Schema schema) {
+    writerSchemas.addSchema(schema);
+    return SchemaNormalization.parsingFingerprint64(schema);
+  }
+
+  /**
+   * Encodes a message using the single-object encoding.
+   *
+   * @param record The message to encode.
+   * @return The encoded message.
+   */
+  public <T extends SpecificRecord> byte[] encodeSingleObject(T record) {
+    State state = STATE.get();
+    state.arrayOut.reset();
+    try {
+      singleObjectEncoder(record).encode(record, state.arrayOut);
+    } catch (IOException | RuntimeException e) {
+      throw new QProcessingException("Could not encode message.", e);
+    }
+
+    return state.arrayOut.toByteArray();
+  }
+
+  /**
+   * Encodes a message using the single-object encoding into a buffer, see
+   * {@link #encode(SpecificRecord, ByteBuffer)}.
+   *
+   * @param record The message to encode.
+   * @param buffer The buffer to encode the message into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the message does not fit in the buffer.
+   */
+  public <T extends SpecificRecord> int encodeSingleObject(T record, ByteBuffer buffer) {
+    State state = STATE.get();
+    int start = buffer.position();
+    state.bufferOut.buffer = buffer;
+    try {
+      singleObjectEncoder(record).encode(record, state.bufferOut);
+    } catch (BufferOverflowException e) {
+      buffer.position(start);
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      buffer.position(start);
+      throw new QProcessingException("Could not encode message.", e);
+    } finally {
+      state.bufferOut.buffer = null;
+    }
+
+    return buffer.position() - start;
+  }
+
+  /**
+   * Decodes a single-object encoded message.
+   *
+   * @param bytes The encoded message.
+   * @param type  The type of the message.
+   * @return The decoded message.
+   */
+  public <T extends SpecificRecord> T decodeSingleObject(byte[] bytes, Class<T> type) {
+    return decodeSingleObject(bytes, 0, bytes.length, type, null);
+  }
+
+  /**
+   * Decodes a single-object encoded message held in a region of a byte array, reusing an existing
+   * record instance. Messages written with an older version of the schema of the type are resolved
+   * to the current version, provided the older schema is known to this codec.
+   *
+   * @param bytes  The bytes holding the encoded message.
+   * @param offset The offset of the first byte of the message.
+   * @param length The number of bytes of the message.
+   * @param type   The type of the message.
+   * @param reuse  The record instance to decode the message into, or null to create a new one.
+   * @return The decoded message, which is the reused instance if one was given.
+   */
+  public <T extends SpecificRecord> T decodeSingleObject(byte[] bytes, int offset, int length,
+      Class<T> type, T reuse) {
+    return decodeSingleObject(ByteBuffer.wrap(bytes, offset, length), type, reuse);
+  }
+
+  /**
+   * Decodes a single-object encoded message from a buffer, see
+   * {@link #decode(ByteBuffer, Class, SpecificRecord)} and
+   * {@link #decodeSingleObject(byte[], int, int, Class, SpecificRecord)}.
+   *
+   * @param buffer The buffer holding the encoded message.
+   * @param type   The type of the message.
+   * @param reuse  The record instance to decode the message into, or null to create a new one.
+   * @return The decoded message, which is the reused instance if one was given.
+   */
+  public <T extends SpecificRecord> T decodeSingleObject(ByteBuffer buffer, Class<T> type,
+      T reuse) {
+    State state = STATE.get();
+    state.bufferIn.buffer = buffer;
+    try {
+      return singleObjectDecoder(type).decode(state.bufferIn, reuse);
+    } catch (IOException | RuntimeException e) {
+      throw new QProcessingException("Could not decode message of type " + type.getSimpleName()
+          + ".", e);
+    } finally {
+      state.bufferIn.buffer = null;
+    }
+  }
+}
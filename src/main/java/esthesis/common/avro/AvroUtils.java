@@ -1,15 +1,27 @@
 package esthesis.common.avro;
 
-import esthesis.common.data.DataUtils;
+import esthesis.common.avro.ELPEntry.ELPMeasurement;
+import esthesis.common.data.HintedValue;
 import esthesis.common.data.DataUtils.ValueType;
+import esthesis.common.data.ValueTypeClassifier;
 import esthesis.common.exception.QMismatchException;
+import esthesis.common.util.IdGenerator;
 import jakarta.enterprise.context.ApplicationScoped;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.UUID;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 /**
  * Utility class to work with data expressed in Avro messages.
@@ -21,48 +33,150 @@ public class AvroUtils {
   // The size limit when displaying possibly large content in the logs.
   private static final int MESSAGE_LOG_ABBREVIATION_LENGTH = 4096;
 
+  // The initial size of the buffer used when parsing multi-line payloads from streams.
+  private static final int BATCH_READ_BUFFER_SIZE = 8192;
+
+  // The Avro value types, indexed by the ordinal of the matching detected value types.
+  private static final ValueTypeEnum[] VALUE_TYPES = Arrays.stream(ValueType.values())
+      .map(valueType -> ValueTypeEnum.valueOf(valueType.name())).toArray(ValueTypeEnum[]::new);
+
+  // The tokenizers used for single line parsing, and their value holders for entry conversion,
+  // reused by each thread.
+  private static final ThreadLocal<ELPTokenizer> TOKENIZERS =
+      ThreadLocal.withInitial(ELPTokenizer::new);
+
+  // The configuration property deferring value type detection to the consumers of the parsed
+  // payloads, see ValueDataResolver.
+  public static final String LAZY_VALUE_TYPES_PROPERTY = "esthesis.avro.lazy-value-types";
+
+  @ConfigProperty(name = LAZY_VALUE_TYPES_PROPERTY, defaultValue = "false")
+  boolean lazyValueTypes;
+
+  // The configuration property omitting the ISO-8601 timestamp fields kept for compatibility from
+  // the messages created, leaving only their epoch-based counterparts.
+  public static final String OMIT_STRING_TIMESTAMPS_PROPERTY =
+      "esthesis.avro.omit-string-timestamps";
+
+  @ConfigProperty(name = OMIT_STRING_TIMESTAMPS_PROPERTY, defaultValue = "false")
+  boolean omitStringTimestamps;
+
+  // The configuration property selecting how the IDs of the messages created are generated, see
+  // IdGenerator.
+  public static final String ID_STRATEGY_PROPERTY = "esthesis.avro.id-strategy";
+
+  @ConfigProperty(name = ID_STRATEGY_PROPERTY, defaultValue = "UUID7")
+  IdGenerator.Strategy idStrategy = IdGenerator.Strategy.UUID7;
+
+  // The configuration property setting the maximum number of distinct categories and measurement
+  // names interned, see SymbolTable.
+  public static final String MAX_NAMES_PROPERTY = "esthesis.avro.max-names";
+
+  @ConfigProperty(name = MAX_NAMES_PROPERTY, defaultValue = "16384")
+  int maxNames = 16384;
+
+  // The configuration property setting the maximum number of distinct hardware IDs interned, see
+  // SymbolTable. Hardware IDs grow with the size of the fleet, so they are kept apart from names.
+  public static final String MAX_HARDWARE_IDS_PROPERTY = "esthesis.avro.max-hardware-ids";
+
+  @ConfigProperty(name = MAX_HARDWARE_IDS_PROPERTY, defaultValue = "262144")
+  int maxHardwareIds = 262144;
+
+  // The canonical instances of categories and measurement names, and of hardware IDs, created on
+  // first use once the configuration is injected.
+  private volatile SymbolTable nameTable;
+  private volatile SymbolTable hardwareIdTable;
+
   /**
    * Sets the value and the value type of the given value data. See {@link #parsePayload(String)}.
+   * With lazy value type detection, the raw value is kept as is and its type is left
+   * {@link ValueTypeEnum#UNKNOWN}, until resolved by {@link ValueDataResolver}.
    *
-   * @param val     The value to introspect.
-   * @param builder The builder to set the resulting values to
-   */
-  private ValueData.Builder setValue(String val, ValueData.Builder builder) {
-    ValueType valueType = DataUtils.detectValueTypeWithHints(val);
-    String extractedVal;
-    log.trace("Detected value type '{}' for value '{}'.", valueType, val);
-    switch (valueType) {
-      case ValueType.STRING:
-        if (val.startsWith("'") && val.endsWith("'")) {
-          extractedVal = val.substring(1, val.length() - 1);
-        } else {
-          extractedVal = val;
-        }
-        break;
-      case ValueType.BYTE, ValueType.SHORT, ValueType.INTEGER, ValueType.LONG, ValueType.FLOAT,
-           ValueType.DOUBLE:
-        if (val.endsWith("b") || val.endsWith("s") || val.endsWith("i") || val.endsWith("l")
-            || val.endsWith("f") || val.endsWith("d")) {
-          extractedVal = val.substring(0, val.length() - 1);
-        } else {
-          extractedVal = val;
+   * @param line        The line holding the value.
+   * @param start       The start of the value in the line, inclusive.
+   * @param end         The end of the value in the line, exclusive.
+   * @param hintedValue The reusable holder to resolve the value into, see
+   *                    {@link ELPTokenizer#getHintedValue()}.
+   * @param valueData   The value data to set the resulting values to, as obtained by
+   *                    {@link #valueDataAt(List, int)}.
+   */
+  private void setValue(CharSequence line, int start, int end, HintedValue hintedValue,
+      ValueData valueData) {
+    if (lazyValueTypes) {
+      ((LazyValueData) valueData).setRaw(text(line, start, end));
+      return;
+    }
+    hintedValue.resolve(line, start, end);
+    String extractedVal = text(line, hintedValue.getStart(), hintedValue.getEnd());
+    log.trace("Detected value type '{}' for value '{}'.", hintedValue.getValueType(),
+        extractedVal);
+    if (valueData instanceof LazyValueData lazyValueData) {
+      // A target previously filled lazily, e.g. by another parser.
+      lazyValueData.clearRaw();
+    }
+    valueData.setValue(extractedVal);
+    valueData.setValueType(VALUE_TYPES[hintedValue.getValueType().ordinal()]);
+  }
+
+  /**
+   * Returns the value data to reuse for the measurement at the given index of a target, adding a
+   * new one if the target has fewer values. With lazy value type detection, values are
+   * {@link LazyValueData}, so that only they are resolved later on; any other value in the target
+   * is replaced.
+   *
+   * @param values The values of the target, a modifiable list.
+   * @param index  The index of the measurement.
+   */
+  private ValueData valueDataAt(List<ValueData> values, int index) {
+    if (index < values.size()) {
+      ValueData valueData = values.get(index);
+      if (!lazyValueTypes || valueData instanceof LazyValueData) {
+        return valueData;
+      }
+      valueData = new LazyValueData();
+      values.set(index, valueData);
+      return valueData;
+    }
+    ValueData valueData = lazyValueTypes ? new LazyValueData() : new ValueData();
+    values.add(valueData);
+    return valueData;
+  }
+
+  /**
+   * Returns the symbol table holding the canonical instances of the categories and measurement
+   * names seen by this parser. The number of names it holds is bounded by
+   * {@value #MAX_NAMES_PROPERTY}. Components can use it to obtain stable IDs for names in compact
+   * encodings.
+   */
+  public SymbolTable getNameTable() {
+    SymbolTable table = nameTable;
+    if (table == null) {
+      synchronized (this) {
+        if (nameTable == null) {
+          nameTable = new SymbolTable(maxNames);
         }
-        break;
-      case ValueType.BIG_INTEGER, ValueType.BIG_DECIMAL:
-        if (val.endsWith("bi") || val.endsWith("bd")) {
-          extractedVal = val.substring(0, val.length() - 2);
-        } else {
-          extractedVal = val;
+        table = nameTable;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Returns the symbol table holding the canonical instances of the hardware IDs of the messages
+   * created. The number of hardware IDs it holds is bounded by
+   * {@value #MAX_HARDWARE_IDS_PROPERTY}. Components constructing messages can use it to intern
+   * hardware IDs.
+   */
+  public SymbolTable getHardwareIdTable() {
+    SymbolTable table = hardwareIdTable;
+    if (table == null) {
+      synchronized (this) {
+        if (hardwareIdTable == null) {
+          hardwareIdTable = new SymbolTable(maxHardwareIds);
         }
-        break;
-      case ValueType.BOOLEAN, ValueType.UNKNOWN:
-        extractedVal = val;
-        break;
-      default:
-        throw new QMismatchException("Unknown value type '{}'.", valueType);
+        table = hardwareIdTable;
+      }
     }
-    log.trace("Extracted value '{}' from value '{}'.", extractedVal, val);
-    return builder.setValue(extractedVal).setValueType(ValueTypeEnum.valueOf(valueType.name()));
+    return table;
   }
 
   /**
@@ -74,10 +188,15 @@ public class AvroUtils {
    * <p>
    * The two spaces above indicate the split positions between the category and the measurements,
    * and the measurements and the timestamp. Category and measurement names can not contain spaces.
-   * Measurement values can contain spaces if they are included in double quotes.
+   * Measurement values can contain spaces, commas, and equal signs if they are included in single
+   * quotes. The line is tokenized in a single pass, see {@link ELPTokenizer}.
    * <p>
    * The timestamp component should be expressed as a string, following
-   * <a href="https://en.wikipedia.org/wiki/ISO_8601">ISO-8601</a>.
+   * <a href="https://en.wikipedia.org/wiki/ISO_8601">ISO-8601</a>, see {@link ELPTimestamps}. When
+   * the timestamp is omitted, the current time is used, with millisecond precision. The timestamp
+   * is set both as an epoch-based {@code timestampMicros} and, unless
+   * {@value #OMIT_STRING_TIMESTAMPS_PROPERTY} is set to true, as an ISO-8601 {@code timestamp}.
+   * Use {@link MessageTimestamps} to read either.
    * <p>
    * All measurement values will be set as Strings in {@link PayloadData}, it is up to the component
    * receiving the resulting  message to convert them to the correct format for its supported data
@@ -93,10 +212,17 @@ public class AvroUtils {
    *   <li>Double: append a 'd' to the value, e.g. 123.456d</li>
    *   <li>Short: append a 's' to the value, e.g. 123s</li>
    *   <li>Byte: append a 'b' to the value, e.g. 123b</li>
+   *   <li>BigInteger: append a 'bi' to the value, e.g. 123456789012345678901234567890bi</li>
+   *   <li>BigDecimal: append a 'bd' to the value, e.g. 1234567890.123456789012345bd</li>
    *   <li>Boolean: e.g. true or false</li>
    *   <li>String: enclose the value is single quotes</li>
    * </ul>
    * <p>
+   * Consumers that never look at value types, such as archivers and forwarders, can skip type
+   * detection by setting {@value #LAZY_VALUE_TYPES_PROPERTY} to true. Values then keep their raw
+   * text, including quotes and type hints, with an {@link ValueTypeEnum#UNKNOWN} type, and are
+   * resolved on demand with {@link ValueDataResolver}, before they leave the process.
+   * <p>
    * Any value other than Boolean and String not conforming to the above
    * conventions will be treated as an Integer.
    * <p>
@@ -116,65 +242,517 @@ public class AvroUtils {
    * @return The parsed payload data.
    */
   public PayloadData parsePayload(final String line) {
-    // Skip comment lines.
-    if (line.startsWith("#")) {
-      throw new QMismatchException("Requested to parse a comment line '{}', skipping it.",
-          StringUtils.abbreviate(line, MESSAGE_LOG_ABBREVIATION_LENGTH));
+    return parse(line, new PayloadData());
+  }
+
+  /**
+   * Parses a line representing esthesis line protocol into an existing payload data object,
+   * overwriting its contents. The {@link ValueData} instances already in the target are reused for
+   * the measurements of the line, so parsing repeatedly into the same target allocates little more
+   * than the parsed Strings. The target is left untouched if the line is invalid. See
+   * {@link #parsePayload(String)} for the format of the line, and {@link PayloadDataPool} to
+   * recycle targets.
+   *
+   * @param line   The line to parse.
+   * @param target The payload data to parse the line into. Its values, if set, must be a
+   *               modifiable list.
+   * @return The target.
+   */
+  public PayloadData parsePayload(final String line, final PayloadData target) {
+    return parse(line, target);
+  }
+
+  /**
+   * Parses a line representing esthesis line protocol, encoded in UTF-8, directly from its bytes
+   * into an existing payload data object. See {@link #parsePayload(String, PayloadData)}.
+   *
+   * @param bytes  The bytes holding the line.
+   * @param offset The offset of the first byte of the line.
+   * @param length The number of bytes of the line.
+   * @param target The payload data to parse the line into.
+   * @return The target.
+   */
+  public PayloadData parsePayload(final byte[] bytes, final int offset, final int length,
+      final PayloadData target) {
+    return parse(new ByteCharSequence(bytes, offset, length), target);
+  }
+
+  /**
+   * Parses a line representing esthesis line protocol, encoded in UTF-8, directly from its bytes.
+   * The line is scanned without being decoded first, and Strings are only created for the parts
+   * ending up in the resulting {@link PayloadData}. See {@link #parsePayload(String)} for the
+   * format of the line.
+   *
+   * @param bytes  The bytes holding the line.
+   * @param offset The offset of the first byte of the line.
+   * @param length The number of bytes of the line.
+   * @return The parsed payload data.
+   */
+  public PayloadData parsePayload(final byte[] bytes, final int offset, final int length) {
+    return parse(new ByteCharSequence(bytes, offset, length), new PayloadData());
+  }
+
+  /**
+   * Parses a line representing esthesis line protocol, encoded in UTF-8, directly from the
+   * remaining bytes of a buffer. The position of the buffer is not modified. See
+   * {@link #parsePayload(String)} for the format of the line.
+   *
+   * @param buffer The buffer holding the line.
+   * @return The parsed payload data.
+   */
+  public PayloadData parsePayload(final ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return parsePayload(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    } else {
+      return parse(new ByteBufferCharSequence(buffer), new PayloadData());
+    }
+  }
+
+  /**
+   * Extracts a part of a line as a String. Lines backed by bytes are decoded only for the
+   * requested part.
+   */
+  static String text(CharSequence line, int start, int end) {
+    if (line instanceof Utf8CharSequence bytes) {
+      return bytes.toString(start, end);
+    } else {
+      return line.subSequence(start, end).toString();
     }
+  }
+
+  /**
+   * Wraps possibly large content so that it is only abbreviated if and when it is rendered, e.g.
+   * by a log statement that is enabled or by an exception message that is requested. Content
+   * other than Strings, such as views over the caller's buffers, may change or be released after
+   * this call, so the part of it that can be rendered is copied right away.
+   */
+  private static Object abbreviate(CharSequence text) {
+    final String content;
+    if (text instanceof String string) {
+      content = string;
+    } else {
+      // One char more than the abbreviation length, so that abbreviating the copy still marks
+      // that the content was longer.
+      content = text(text, 0, Math.min(text.length(), MESSAGE_LOG_ABBREVIATION_LENGTH + 1));
+    }
+    return new Object() {
+      @Override
+      public String toString() {
+        return StringUtils.abbreviate(content, MESSAGE_LOG_ABBREVIATION_LENGTH);
+      }
+    };
+  }
 
-    // Split the line into category, measurements, and optional timestamp.
-    @SuppressWarnings("java:S5998") String[] parts = line.split(
-        " +(?=(?:[^']*'[^']*')*[^']*$)");
+  /**
+   * Parses a line representing esthesis line protocol without throwing on invalid lines. See
+   * {@link #parsePayload(String)} for the format of the line.
+   *
+   * @param line The line to parse.
+   * @return The parsed payload data, or the reason the line was rejected.
+   */
+  public ParseResult<PayloadData> tryParsePayload(final String line) {
+    return tryParse(line, new PayloadData());
+  }
 
-    if (parts.length < 2) {
-      throw new QMismatchException(
-          "Invalid eLP data in line '{}', at least two parts are "
-              + "required, the category and one or more measurements.",
-          StringUtils.abbreviate(line, MESSAGE_LOG_ABBREVIATION_LENGTH));
+  /**
+   * Parses a line representing esthesis line protocol, encoded in UTF-8, directly from its bytes
+   * without throwing on invalid lines. See {@link #parsePayload(byte[], int, int)}.
+   *
+   * @param bytes  The bytes holding the line.
+   * @param offset The offset of the first byte of the line.
+   * @param length The number of bytes of the line.
+   * @return The parsed payload data, or the reason the line was rejected.
+   */
+  public ParseResult<PayloadData> tryParsePayload(final byte[] bytes, final int offset,
+      final int length) {
+    return tryParse(new ByteCharSequence(bytes, offset, length), new PayloadData());
+  }
+
+  /**
+   * Parses a line of esthesis line protocol held in any character sequence, without throwing on
+   * invalid lines.
+   */
+  private ParseResult<PayloadData> tryParse(final CharSequence line, final PayloadData target) {
+    ELPTokenizer tokenizer = TOKENIZERS.get();
+    if (!parse(line, 0, line.length(), tokenizer, target)) {
+      return ParseResult.failure(tokenizer.getError(), tokenizer.getErrorOffset());
     }
 
-    // Start processing each part of the payload.
-    log.debug("Processing line '{}'.",
-        StringUtils.abbreviate(line, MESSAGE_LOG_ABBREVIATION_LENGTH));
-    PayloadData.Builder payloadBuilder = EsthesisDataMessage.newBuilder().getPayloadBuilder();
+    return ParseResult.success(target);
+  }
+
+  /**
+   * Parses a line of esthesis line protocol held in any character sequence, see
+   * {@link #parsePayload(String)}.
+   */
+  private PayloadData parse(final CharSequence line, final PayloadData target) {
+    return switch (tryParse(line, target)) {
+      case ParseResult.Success<PayloadData> success -> {
+        if (log.isDebugEnabled()) {
+          log.debug("Processed line '{}'.", abbreviate(line));
+        }
+        yield success.value();
+      }
+      case ParseResult.Failure<PayloadData> failure -> throw switch (failure.error()) {
+        case COMMENT -> new QMismatchException(
+            "Requested to parse a comment line '{}', skipping it.", abbreviate(line));
+        case INVALID_TIMESTAMP -> new QMismatchException(
+            "Invalid timestamp in line '{}': must be a valid ISO-8601 timestamp in UTC.",
+            abbreviate(line));
+        default -> new QMismatchException("Invalid eLP data in line '{}', {} at position {}.",
+            abbreviate(line), failure.reason(), failure.offset());
+      };
+    };
+  }
+
+  /**
+   * Parses a line of esthesis line protocol held in a region of a character sequence into a
+   * payload data object, without throwing on invalid lines. The payload data is filled in place,
+   * bypassing the Avro builders, and is only modified if the line is valid.
+   *
+   * @param line      The character sequence holding the line.
+   * @param from      The start of the line, inclusive.
+   * @param to        The end of the line, exclusive.
+   * @param tokenizer The tokenizer to use.
+   * @param target    The payload data to fill.
+   * @return True if the line was parsed, false otherwise, in which case the tokenizer holds the
+   * reason.
+   */
+  private boolean parse(final CharSequence line, final int from, final int to,
+      final ELPTokenizer tokenizer, final PayloadData target) {
+    // Tokenize the line into category, measurements, and optional timestamp.
+    if (!tokenizer.tokenize(line, from, to)) {
+      return false;
+    }
+
+    // Validate the timestamp, if available.
+    Instant timestampInstant;
+    String timestamp = null;
+    if (tokenizer.hasTimestamp()) {
+      timestampInstant = ELPTimestamps.toInstant(line, tokenizer.getTimestampStart(),
+          tokenizer.getTimestampEnd());
+      if (timestampInstant == null) {
+        tokenizer.fail(ELPParseError.INVALID_TIMESTAMP, tokenizer.getTimestampStart());
+        return false;
+      }
+      if (!omitStringTimestamps) {
+        timestamp = text(line, tokenizer.getTimestampStart(), tokenizer.getTimestampEnd());
+      }
+    } else {
+      CachedClock.Tick now = CachedClock.INSTANCE.tick();
+      timestampInstant = now.instant();
+      if (!omitStringTimestamps) {
+        timestamp = now.timestamp();
+      }
+    }
 
     // Set the category.
-    payloadBuilder.setCategory(parts[0]);
-
-    // Set the measurements.
-    String[] measurements = parts[1].split(",");
-    payloadBuilder.setValues(Arrays.stream(measurements).map(measurement -> {
-      String[] measurementParts = measurement.split("=");
-      if (measurementParts.length != 2) {
-        throw new QMismatchException("Invalid measurement data in line '{}', expected a key-value "
-            + "pair separated by '=', but got '{}'.",
-            StringUtils.abbreviate(line, MESSAGE_LOG_ABBREVIATION_LENGTH),
-            measurement);
+    SymbolTable names = getNameTable();
+    target.setCategory(
+        names.intern(line, tokenizer.getCategoryStart(), tokenizer.getCategoryEnd()));
+
+    // Set the measurements, reusing any value data instances already in the target.
+    int measurementCount = tokenizer.getMeasurementCount();
+    List<ValueData> values = target.getValues();
+    if (values == null) {
+      values = new ArrayList<>(measurementCount);
+      target.setValues(values);
+    }
+    HintedValue hintedValue = tokenizer.getHintedValue();
+    for (int i = 0; i < measurementCount; i++) {
+      ValueData valueData = valueDataAt(values, i);
+      valueData.setName(
+          names.intern(line, tokenizer.getNameStart(i), tokenizer.getNameEnd(i)));
+      setValue(line, tokenizer.getValueStart(i), tokenizer.getValueEnd(i), hintedValue,
+          valueData);
+    }
+    if (values.size() > measurementCount) {
+      values.subList(measurementCount, values.size()).clear();
+    }
+    target.setTimestamp(timestamp);
+    target.setTimestampMicros(timestampInstant);
+
+    return true;
+  }
+
+  /**
+   * Converts an entry into a payload data object directly, without writing it as a line and
+   * parsing it back. Measurement values with an explicit type keep that type, provided they are
+   * values the parser produces for it, e.g. an INTEGER value must be an integer in its range and a
+   * STRING value must not be enclosed in quotes; the type of other values is resolved from their
+   * type hints as described in {@link #parsePayload(String)}, and the timestamp defaults to the
+   * current time.
+   *
+   * @param entry The entry to convert.
+   * @return The converted payload data.
+   */
+  public PayloadData toPayload(final ELPEntry entry) {
+    return toPayload(entry, new PayloadData());
+  }
+
+  /**
+   * Converts an entry into an existing payload data object, overwriting its contents and reusing
+   * its {@link ValueData} instances, see {@link #toPayload(ELPEntry)} and
+   * {@link #parsePayload(String, PayloadData)}.
+   *
+   * @param entry  The entry to convert.
+   * @param target The payload data to convert the entry into. Its values, if set, must be a
+   *               modifiable list.
+   * @return The target.
+   */
+  public PayloadData toPayload(final ELPEntry entry, final PayloadData target) {
+    List<ELPMeasurement> measurements = entry.getMeasurements();
+    if (StringUtils.isEmpty(entry.getCategory()) || measurements == null
+        || measurements.isEmpty()) {
+      throw new QMismatchException("Entry of category '{}' must have a category and at least one "
+          + "measurement.", entry.getCategory());
+    }
+
+    List<ValueData> values = target.getValues();
+    if (values == null) {
+      values = new ArrayList<>(measurements.size());
+      target.setValues(values);
+    }
+    HintedValue hintedValue = TOKENIZERS.get().getHintedValue();
+    for (int i = 0; i < measurements.size(); i++) {
+      ELPMeasurement measurement = measurements.get(i);
+      String value = measurement.getValue();
+      if (StringUtils.isEmpty(measurement.getName()) || value == null) {
+        throw new QMismatchException("Measurement '{}' of entry of category '{}' must have a "
+            + "name and a value.", measurement.getName(), entry.getCategory());
       }
-      return setValue(measurementParts[1],
-          ValueData.newBuilder().setName(measurementParts[0])).build();
-    }).toList());
-
-    // Validate and set the timestamp, if available.
-    if (parts.length == 3) {
-      String timestamp = parts[2];
-      try {
-        Instant.parse(timestamp);
-      } catch (DateTimeParseException e) {
-        throw new QMismatchException("Invalid timestamp in line '{}': must be a valid ISO-8601 timestamp in UTC.",
-                StringUtils.abbreviate(line, MESSAGE_LOG_ABBREVIATION_LENGTH));
+      ValueData valueData = valueDataAt(values, i);
+      valueData.setName(getNameTable().intern(measurement.getName()));
+      if (measurement.getValueType() != null) {
+        // Values of an explicit type, UNKNOWN included, are never resolved lazily.
+        checkTypedValue(measurement.getName(), value, measurement.getValueType());
+        if (valueData instanceof LazyValueData lazyValueData) {
+          lazyValueData.clearRaw();
+        }
+        valueData.setValue(value);
+        valueData.setValueType(measurement.getValueType());
+      } else {
+        setValue(value, 0, value.length(), hintedValue, valueData);
       }
-      payloadBuilder.setTimestamp(timestamp);
+    }
+    if (values.size() > measurements.size()) {
+      values.subList(measurements.size(), values.size()).clear();
+    }
+
+    target.setCategory(getNameTable().intern(entry.getCategory()));
+    if (entry.getDate() != null) {
+      target.setTimestamp(omitStringTimestamps ? null : entry.getDate().toString());
+      target.setTimestampMicros(entry.getDate());
     } else {
-      payloadBuilder.setTimestamp(Instant.now().toString());
+      CachedClock.Tick now = CachedClock.INSTANCE.tick();
+      target.setTimestamp(omitStringTimestamps ? null : now.timestamp());
+      target.setTimestampMicros(now.instant());
+    }
+
+    return target;
+  }
+
+  /**
+   * Checks that a value given with an explicit type is a value the parser produces for that type.
+   * Strings must not be enclosed in quotes, as the parser removes them, booleans must be either
+   * true or false, and numbers must be classified by {@link ValueTypeClassifier} as a type that
+   * fits in the given type, e.g. a BYTE or SHORT value is a valid INTEGER. Floating point values
+   * may also be NaN or infinite. Values of unknown type are kept as they are.
+   *
+   * @throws QMismatchException thrown when the value is not valid for its type.
+   */
+  private static void checkTypedValue(String name, String value, ValueTypeEnum valueType) {
+    boolean valid = switch (valueType) {
+      case STRING -> value.length() < 2 || value.charAt(0) != '\''
+          || value.charAt(value.length() - 1) != '\'';
+      case BOOLEAN -> value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+      case UNKNOWN -> true;
+      default -> isNumberOfType(value, valueType);
+    };
+    if (!valid) {
+      throw new QMismatchException("Invalid {} value '{}' of measurement '{}'.", valueType, value,
+          name);
     }
+  }
+
+  private static boolean isNumberOfType(String value, ValueTypeEnum valueType) {
+    int detected = ValueTypeClassifier.classify(value).ordinal();
+    return switch (valueType) {
+      case BYTE, SHORT, INTEGER, LONG, BIG_INTEGER -> detected >= ValueType.BYTE.ordinal()
+          && detected <= ValueType.valueOf(valueType.name()).ordinal();
+      case FLOAT, DOUBLE -> (detected >= ValueType.BYTE.ordinal()
+          && detected <= ValueType.BIG_DECIMAL.ordinal())
+          || value.equals("NaN") || value.equals("Infinity") || value.equals("-Infinity");
+      case BIG_DECIMAL -> detected >= ValueType.BYTE.ordinal()
+          && detected <= ValueType.BIG_DECIMAL.ordinal();
+      default -> false;
+    };
+  }
 
-    return payloadBuilder.build();
+  /**
+   * Converts an entry into a data message, see {@link #toPayload(ELPEntry)}.
+   *
+   * @param entry      The entry to convert.
+   * @param hardwareId The hardware ID of the device the entry pertains to.
+   * @param seenBy     The application name that creates this message.
+   * @param type       The type of the message.
+   * @param channel    The channel of the message.
+   * @return The data message.
+   */
+  public EsthesisDataMessage toDataMessage(final ELPEntry entry, final String hardwareId,
+      final String seenBy, final MessageTypeEnum type, final String channel) {
+    CachedClock.Tick now = CachedClock.INSTANCE.tick();
+    return EsthesisDataMessage.newBuilder()
+        .setId(IdGenerator.nextId(idStrategy))
+        .setHardwareId(getHardwareIdTable().intern(hardwareId))
+        .setSeenAt(omitStringTimestamps ? null : now.timestamp())
+        .setSeenAtMicros(now.instant()).setSeenBy(seenBy).setType(type).setChannel(channel)
+        .setPayload(toPayload(entry)).build();
+  }
+
+  /**
+   * Parses a multi-line esthesis line protocol payload. Each line is parsed as described in
+   * {@link #parsePayload(String)}, however invalid lines do not abort parsing; they are collected
+   * as errors in the returned result. Blank lines and comment lines are skipped. Lines may be
+   * terminated either by '\n' or by '\r\n'.
+   *
+   * @param payload The multi-line payload to parse.
+   * @return The parsed payloads together with any line errors.
+   */
+  public ELPBatchResult parsePayloads(final CharSequence payload) {
+    ELPBatchResult result = new ELPBatchResult();
+    parseLines(payload, 0, payload.length(), true, new ELPTokenizer(), result);
+
+    return result;
+  }
+
+  /**
+   * Parses a multi-line esthesis line protocol payload, encoded in UTF-8, directly from its bytes.
+   * See {@link #parsePayloads(CharSequence)}.
+   *
+   * @param bytes  The bytes holding the payload.
+   * @param offset The offset of the first byte of the payload.
+   * @param length The number of bytes of the payload.
+   * @return The parsed payloads together with any line errors.
+   */
+  public ELPBatchResult parsePayloads(final byte[] bytes, final int offset, final int length) {
+    return parsePayloads(new ByteCharSequence(bytes, offset, length));
+  }
+
+  /**
+   * Parses a multi-line esthesis line protocol payload read from a reader, until the end of the
+   * reader is reached. See {@link #parsePayloads(CharSequence)}. The reader is not closed.
+   *
+   * @param reader The reader to read the payload from.
+   * @return The parsed payloads together with any line errors.
+   * @throws IOException thrown when the reader can not be read
+   */
+  public ELPBatchResult parsePayloads(final Reader reader) throws IOException {
+    ELPBatchResult result = new ELPBatchResult();
+    ELPTokenizer tokenizer = new ELPTokenizer();
+    BufferedReader bufferedReader = reader instanceof BufferedReader br
+        ? br : new BufferedReader(reader);
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      parseLine(line, 0, line.length(), tokenizer, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses a multi-line esthesis line protocol payload, encoded in UTF-8, read from an input
+   * stream until its end. The stream is consumed in chunks which are scanned without being
+   * decoded first, see {@link #parsePayload(byte[], int, int)}. The stream is not closed.
+   *
+   * @param inputStream The input stream to read the payload from.
+   * @return The parsed payloads together with any line errors.
+   * @throws IOException thrown when the input stream can not be read
+   */
+  public ELPBatchResult parsePayloads(final InputStream inputStream) throws IOException {
+    ELPBatchResult result = new ELPBatchResult();
+    ELPTokenizer tokenizer = new ELPTokenizer();
+    ByteCharSequence view = new ByteCharSequence();
+    byte[] buffer = new byte[BATCH_READ_BUFFER_SIZE];
+    int limit = 0;
+    int read;
+    while ((read = inputStream.read(buffer, limit, buffer.length - limit)) != -1) {
+      limit += read;
+      // Parse all complete lines in the buffer and keep the trailing partial line.
+      int consumed = parseLines(view.wrap(buffer, 0, limit), 0, limit, false, tokenizer,
+          result);
+      System.arraycopy(buffer, consumed, buffer, 0, limit - consumed);
+      limit -= consumed;
+      // Grow the buffer if a single line does not fit in it.
+      if (limit == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+    }
+    if (limit > 0) {
+      parseLine(view.wrap(buffer, 0, limit), 0, limit, tokenizer, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses all lines held in a region of a character sequence.
+   *
+   * @param text      The character sequence holding the lines.
+   * @param from      The start of the region, inclusive.
+   * @param to        The end of the region, exclusive.
+   * @param complete  Whether the region holds the complete payload, in which case the last line
+   *                  does not need to be terminated. Otherwise, a trailing unterminated line is
+   *                  left unparsed, as more of it may follow.
+   * @param tokenizer The tokenizer to use.
+   * @param result    The result to collect the parsed lines into.
+   * @return The offset right after the last parsed line.
+   */
+  int parseLines(final CharSequence text, final int from, final int to,
+      final boolean complete, final ELPTokenizer tokenizer, final ELPBatchResult result) {
+    int lineStart = from;
+    for (int i = from; i < to; i++) {
+      if (text.charAt(i) == '\n') {
+        parseLine(text, lineStart, i, tokenizer, result);
+        lineStart = i + 1;
+      }
+    }
+    if (complete && lineStart < to) {
+      parseLine(text, lineStart, to, tokenizer, result);
+      lineStart = to;
+    }
+
+    return lineStart;
+  }
+
+  /**
+   * Parses a single line of a multi-line payload and records the outcome in the given result.
+   */
+  private void parseLine(final CharSequence text, final int from, int to,
+      final ELPTokenizer tokenizer, final ELPBatchResult result) {
+    if (to > from && text.charAt(to - 1) == '\r') {
+      to--;
+    }
+    PayloadData payload = new PayloadData();
+    if (parse(text, from, to, tokenizer, payload)) {
+      result.addPayload(payload);
+    } else if (tokenizer.getError() == ELPParseError.EMPTY_LINE
+        || tokenizer.getError() == ELPParseError.COMMENT) {
+      result.addSkippedLine();
+    } else {
+      result.addError(result.getLineCount() + 1, tokenizer.getError(),
+          tokenizer.getErrorOffset() - from);
+    }
   }
 
   /**
    * Parses a Command Reply message expressed in esthesis line protocol into an
-   * {@link EsthesisCommandReplyMessage}.
+   * {@link EsthesisCommandReplyMessage}. The format of a Command Reply message is:
+   * <pre>
+   *   correlationId type output
+   * </pre>
+   * where type is either 's' for success or 'f' for failure, and output may be empty.
    *
    * @param body       The body of the command reply message.
    * @param hardwareId The hardware ID of the device that sent the reply.
@@ -183,66 +761,177 @@ public class AvroUtils {
    */
   public EsthesisCommandReplyMessage parseCommandReplyLP(String body, String hardwareId,
       String appName, String topic) {
-    // Parse the command reply message.
-    try {
-      String correlationId = body.substring(0, body.indexOf(" "));
-      String success = body.substring(body.indexOf(" ") + 1, body.indexOf(" ") + 2);
-      String payload = body.substring(body.indexOf(" ") + 3);
+    return orThrow(tryParseCommandReplyLP(body, hardwareId, appName, topic), body);
+  }
 
-      log.debug("Extracted correlation ID '{}', success '{}', and payload '{}'.", correlationId,
-          success, StringUtils.abbreviate(payload, MESSAGE_LOG_ABBREVIATION_LENGTH));
+  /**
+   * Parses a Command Reply message held in a region of a byte array, e.g. the raw body of an MQTT
+   * message, see {@link #parseCommandReplyLP(String, String, String, String)}.
+   *
+   * @param bytes      The bytes holding the UTF-8 encoded command reply message.
+   * @param offset     The offset of the first byte of the message.
+   * @param length     The number of bytes of the message.
+   * @param hardwareId The hardware ID of the device that sent the reply.
+   * @param appName    The application name that creates this reply object.
+   * @param topic      The topic on which the reply was received.
+   */
+  public EsthesisCommandReplyMessage parseCommandReplyLP(byte[] bytes, int offset, int length,
+      String hardwareId, String appName, String topic) {
+    ByteCharSequence body = new ByteCharSequence(bytes, offset, length);
+    return orThrow(tryParseCommandReply(body, hardwareId, appName, topic,
+        CachedClock.INSTANCE.tick()), body);
+  }
 
-      // Convert incoming message to an EsthesisCommandReplyMessage.
-      EsthesisCommandReplyMessage msg = EsthesisCommandReplyMessage.newBuilder()
-          .setId(UUID.randomUUID().toString()).setCorrelationId(correlationId)
-          .setHardwareId(hardwareId).setSeenAt(Instant.now().toString()).setSeenBy(appName)
-          .setChannel(topic).setType(ReplyType.valueOf(success)).setPayload(payload).build();
+  private static EsthesisCommandReplyMessage orThrow(
+      ParseResult<EsthesisCommandReplyMessage> result, CharSequence body) {
+    return switch (result) {
+      case ParseResult.Success<EsthesisCommandReplyMessage> success -> success.value();
+      case ParseResult.Failure<EsthesisCommandReplyMessage> failure ->
+          throw new QMismatchException("Failed to parse Command Reply message '{}' due to '{}'. "
+              + "Check that Command Reply message are formatted as [correlationId] "
+              + "[success] [output].", abbreviate(body), failure.reason());
+    };
+  }
 
-      log.debug("Parsed Command Reply message to EsthesisCommandReplyMessage '{}'",
-          StringUtils.abbreviate(msg.toString(), MESSAGE_LOG_ABBREVIATION_LENGTH));
+  /**
+   * Parses a Command Reply message expressed in esthesis line protocol without throwing on
+   * invalid messages. See {@link #parseCommandReplyLP(String, String, String, String)}.
+   *
+   * @param body       The body of the command reply message.
+   * @param hardwareId The hardware ID of the device that sent the reply.
+   * @param appName    The application name that creates this reply object.
+   * @param topic      The topic on which the reply was received.
+   * @return The parsed Command Reply message, or the reason the message was rejected.
+   */
+  public ParseResult<EsthesisCommandReplyMessage> tryParseCommandReplyLP(String body,
+      String hardwareId, String appName, String topic) {
+    return tryParseCommandReply(body, hardwareId, appName, topic, CachedClock.INSTANCE.tick());
+  }
+
+  /**
+   * Parses a batch of Command Reply messages without throwing on invalid messages, e.g. the
+   * replies of a fleet of devices to a broadcast command. The replies of a batch share the time
+   * they were seen at, and their bodies are scanned in place, without being decoded first. See
+   * {@link #parseCommandReplyLP(String, String, String, String)} for the format of each reply.
+   *
+   * @param bodies      The raw, UTF-8 encoded bodies of the command reply messages.
+   * @param hardwareIds The hardware IDs of the devices that sent the replies, in the same order.
+   * @param topics      The topics on which the replies were received, in the same order.
+   * @param appName     The application name that creates the reply objects.
+   * @return The parsed Command Reply messages, or the reasons they were rejected, in the same
+   * order.
+   */
+  public List<ParseResult<EsthesisCommandReplyMessage>> tryParseCommandReplies(
+      List<byte[]> bodies, List<String> hardwareIds, List<String> topics, String appName) {
+    Validate.isTrue(bodies.size() == hardwareIds.size() && bodies.size() == topics.size(),
+        "Bodies, hardware IDs and topics must be of the same size.");
+    CachedClock.Tick now = CachedClock.INSTANCE.tick();
+    ByteCharSequence body = new ByteCharSequence();
+    List<ParseResult<EsthesisCommandReplyMessage>> results = new ArrayList<>(bodies.size());
+    for (int i = 0; i < bodies.size(); i++) {
+      byte[] bytes = bodies.get(i);
+      results.add(tryParseCommandReply(body.wrap(bytes, 0, bytes.length), hardwareIds.get(i),
+          appName, topics.get(i), now));
+    }
+
+    return results;
+  }
 
-      return msg;
-    } catch (Exception e) {
-      throw new QMismatchException("Failed to parse Command Reply message '{}' due to '{}'. "
-          + "Check that Command Reply message are formatted as [correlationId] "
-          + "[success] [output].",
-          StringUtils.abbreviate(body, MESSAGE_LOG_ABBREVIATION_LENGTH), e);
+  /**
+   * Parses a Command Reply message in a single scan of its header, extracting the correlation ID
+   * and the output without any intermediate substrings.
+   */
+  private ParseResult<EsthesisCommandReplyMessage> tryParseCommandReply(CharSequence body,
+      String hardwareId, String appName, String topic, CachedClock.Tick now) {
+    int length = body.length();
+    int correlationIdEnd = 0;
+    while (correlationIdEnd < length && body.charAt(correlationIdEnd) != ' ') {
+      correlationIdEnd++;
+    }
+    if (correlationIdEnd == 0 || correlationIdEnd == length) {
+      return ParseResult.failure(ELPParseError.MISSING_CORRELATION_ID, 0);
+    }
+    int typeIndex = correlationIdEnd + 1;
+    ReplyType replyType = typeIndex < length ? switch (body.charAt(typeIndex)) {
+      case 's' -> ReplyType.s;
+      case 'f' -> ReplyType.f;
+      default -> null;
+    } : null;
+    if (replyType == null) {
+      return ParseResult.failure(ELPParseError.INVALID_REPLY_TYPE, typeIndex);
     }
+    if (typeIndex + 1 >= length || body.charAt(typeIndex + 1) != ' ') {
+      return ParseResult.failure(ELPParseError.MISSING_REPLY_PAYLOAD, typeIndex + 1);
+    }
+    String correlationId = text(body, 0, correlationIdEnd);
+    String payload = text(body, typeIndex + 2, length);
+
+    log.debug("Extracted correlation ID '{}', success '{}', and payload '{}'.", correlationId,
+        replyType, abbreviate(payload));
+
+    // Convert incoming message to an EsthesisCommandReplyMessage.
+    EsthesisCommandReplyMessage msg = EsthesisCommandReplyMessage.newBuilder()
+        .setId(IdGenerator.nextId(idStrategy)).setCorrelationId(correlationId)
+        .setHardwareId(getHardwareIdTable().intern(hardwareId))
+        .setSeenAt(omitStringTimestamps ? null : now.timestamp())
+        .setSeenAtMicros(now.instant()).setSeenBy(appName)
+        .setChannel(topic).setType(replyType).setPayload(payload).build();
+
+    if (log.isDebugEnabled()) {
+      log.debug("Parsed Command Reply message to EsthesisCommandReplyMessage '{}'",
+          abbreviate(msg.toString()));
+    }
+
+    return ParseResult.success(msg);
   }
 
   /**
-   * Converts an {@link EsthesisCommandRequestMessage} to the line protocol format.
+   * Converts an {@link EsthesisCommandRequestMessage} to the line protocol format, see
+   * {@link CommandTemplate} for the format and for sending the same command to many devices.
    *
    * @param msg The Command Request message to convert.
    */
   public String commandRequestToLineProtocol(EsthesisCommandRequestMessage msg) {
     StringBuilder lineProtocol = new StringBuilder();
+    try {
+      CommandTemplate.append(msg, lineProtocol);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
 
-    // Add the id of this request message.
-    lineProtocol.append(msg.getId());
-    lineProtocol.append(" ");
-
-    // Add the type of the command.
-    lineProtocol.append(msg.getCommandType().toString());
+    if (log.isDebugEnabled()) {
+      log.debug("Converted Avro Command Request message '{}' to line protocol message '{}'.",
+          abbreviate(msg.toString()), abbreviate(lineProtocol));
+    }
 
-    // Add the execution type of the command.
-    lineProtocol.append(msg.getExecutionType().toString());
+    return lineProtocol.toString();
+  }
 
-    if (StringUtils.isNotBlank(msg.getCommand())) {
-      lineProtocol.append(" ");
-      lineProtocol.append(msg.getCommand());
-      if (StringUtils.isNotBlank(msg.getArguments())) {
-        lineProtocol.append(" ");
-        lineProtocol.append(msg.getArguments());
-      }
+  /**
+   * Converts an {@link EsthesisCommandRequestMessage} to the line protocol format, writing it as
+   * UTF-8 into a buffer, starting at its current position. On return, the position of the buffer
+   * is advanced past the line. If the line does not fit in the remaining bytes of the buffer, the
+   * position of the buffer is left unchanged.
+   *
+   * @param msg The Command Request message to convert.
+   * @param out The buffer to write the line into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the line does not fit in the buffer.
+   */
+  public int commandRequestToLineProtocol(EsthesisCommandRequestMessage msg, ByteBuffer out) {
+    int start = out.position();
+    try {
+      Utf8ByteBufferAppendable appendable = new Utf8ByteBufferAppendable().wrap(out);
+      CommandTemplate.append(msg, appendable);
+      appendable.finish();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      out.position(start);
+      throw e;
     }
 
-    log.debug("Converted Avro Command Request message '{}' to line protocol " + "message '{}'.",
-        StringUtils.abbreviate(msg.toString(), MESSAGE_LOG_ABBREVIATION_LENGTH),
-        StringUtils.abbreviate(lineProtocol.toString(),
-            MESSAGE_LOG_ABBREVIATION_LENGTH));
-
-    return lineProtocol.toString();
+    return out.position() - start;
   }
 
 }
@@ -0,0 +1,109 @@
+package esthesis.common.avro;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view over the remaining bytes of a {@link ByteBuffer} holding UTF-8 (or
+ * ASCII) encoded text, e.g. a direct or memory-mapped buffer. Like {@link ByteCharSequence}, each
+ * byte is exposed as a single char and text is only decoded when a {@link String} is requested.
+ * The position and limit of the underlying buffer are never modified.
+ * <p>
+ * Views are mutable so that they can be re-pointed to a different buffer with
+ * {@link #wrap(ByteBuffer)} without allocating; they are not thread-safe.
+ */
+public final class ByteBufferCharSequence implements Utf8CharSequence {
+
+  private ByteBuffer buffer;
+  private int offset;
+  private int length;
+
+  public ByteBufferCharSequence() {
+    this(ByteBuffer.allocate(0));
+  }
+
+  public ByteBufferCharSequence(ByteBuffer buffer) {
+    wrap(buffer);
+  }
+
+  /**
+   * Points this view to the remaining bytes of a different buffer.
+   *
+   * @param buffer The buffer to view.
+   * @return This view.
+   */
+  public ByteBufferCharSequence wrap(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.offset = buffer.position();
+    this.length = buffer.remaining();
+    return this;
+  }
+
+  /**
+   * Points this view to a region of a different buffer, regardless of its position and limit.
+   *
+   * @param buffer The buffer to view.
+   * @param offset The index of the first byte of the region.
+   * @param length The length of the region.
+   * @return This view.
+   */
+  public ByteBufferCharSequence wrap(ByteBuffer buffer, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+      throw new IndexOutOfBoundsException(
+          "Region [" + offset + ", " + (offset + length) + ") out of bounds for capacity "
+              + buffer.capacity());
+    }
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return (char) (buffer.get(offset + index) & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    checkRange(start, end);
+    return new ByteBufferCharSequence(buffer.slice(offset + start, end - start));
+  }
+
+  @Override
+  public String toString(int start, int end) {
+    checkRange(start, end);
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + offset + start, end - start,
+          StandardCharsets.UTF_8);
+    } else {
+      byte[] bytes = new byte[end - start];
+      buffer.get(offset + start, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toString(0, length);
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + start + ", " + end + ") out of bounds for length " + length);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package esthesis.common.avro;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view over a region of a byte array holding UTF-8 (or ASCII) encoded
+ * text. No decoding takes place when the view is created or scanned; each byte is exposed as a
+ * single char, so indices are byte offsets. This is sufficient for scanning the structural
+ * characters of the esthesis line protocol, which are all ASCII and can never appear inside a
+ * multibyte UTF-8 sequence. Text is only decoded when a {@link String} is requested via
+ * {@link #toString()} or {@link #toString(int, int)}.
+ * <p>
+ * Views are mutable so that they can be re-pointed to a different region with
+ * {@link #wrap(byte[], int, int)} without allocating; they are not thread-safe.
+ */
+public final class ByteCharSequence implements Utf8CharSequence {
+
+  private byte[] bytes;
+  private int offset;
+  private int length;
+
+  public ByteCharSequence() {
+    this(new byte[0], 0, 0);
+  }
+
+  public ByteCharSequence(byte[] bytes, int offset, int length) {
+    wrap(bytes, offset, length);
+  }
+
+  /**
+   * Points this view to a different region of a byte array.
+   *
+   * @param bytes  The bytes to view.
+   * @param offset The offset of the first byte of the region.
+   * @param length The length of the region.
+   * @return This view.
+   */
+  public ByteCharSequence wrap(byte[] bytes, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > bytes.length - length) {
+      throw new IndexOutOfBoundsException(
+          "Region [" + offset + ", " + (offset + length) + ") out of bounds for length "
+              + bytes.length);
+    }
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return (char) (bytes[offset + index] & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    checkRange(start, end);
+    return new ByteCharSequence(bytes, offset + start, end - start);
+  }
+
+  @Override
+  public String toString(int start, int end) {
+    checkRange(start, end);
+    return new String(bytes, offset + start, end - start, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + start + ", " + end + ") out of bounds for length " + length);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package esthesis.common.avro;
+
+import java.time.Instant;
+
+/**
+ * A coarse-grained clock providing the current time, with millisecond precision, both as an
+ * {@link Instant} and rendered as an ISO-8601 timestamp. Both are cached and reused by all callers
+ * within the same millisecond, so that lines parsed in a burst do not each format a fresh
+ * timestamp.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class CachedClock {
+
+  // The clock shared by all parsers.
+  static final CachedClock INSTANCE = new CachedClock();
+
+  // The last tick, replaced as a whole so readers always see consistent values.
+  private volatile Tick tick = new Tick(Long.MIN_VALUE, null, null);
+
+  /**
+   * The current time, as an instant and rendered as an ISO-8601 timestamp.
+   */
+  record Tick(long epochMilli, Instant instant, String timestamp) {
+
+  }
+
+  /**
+   * Returns the current time, both as an instant and as an ISO-8601 timestamp of the same
+   * millisecond.
+   */
+  Tick tick() {
+    long epochMilli = System.currentTimeMillis();
+    Tick current = tick;
+    if (current.epochMilli() != epochMilli) {
+      Instant instant = Instant.ofEpochMilli(epochMilli);
+      current = new Tick(epochMilli, instant, instant.toString());
+      tick = current;
+    }
+    return current;
+  }
+}
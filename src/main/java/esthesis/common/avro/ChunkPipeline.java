@@ -0,0 +1,198 @@
+package esthesis.common.avro;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Reads the numbered chunks of some input, e.g. the byte ranges of a file, in parallel on a
+ * dedicated {@link ForkJoinPool}, and hands the items read over to a consumer.
+ * <p>
+ * Chunks are submitted in sequence, and at most {@value #WINDOW_PER_THREAD} chunks per thread are
+ * in flight at any time, so the memory held by chunks read ahead of the consumer is bounded
+ * regardless of the size of the input. In ordered mode, the items of each chunk are collected and
+ * handed over once all preceding chunks have been handed over. Hand-over takes place outside any
+ * lock, by a single thread at a time, so threads completing chunks never wait for the consumer.
+ *
+ * @param <T> The type of the items read.
+ */
+final class ChunkPipeline<T> {
+
+  // The number of chunks in flight per thread.
+  static final int WINDOW_PER_THREAD = 2;
+
+  /**
+   * Reads a single chunk.
+   *
+   * @param <T> The type of the items read.
+   */
+  @FunctionalInterface
+  interface ChunkReader<T> {
+
+    /**
+     * Reads a chunk, passing each item read to the given sink.
+     *
+     * @param chunk The number of the chunk to read.
+     * @param sink  The sink receiving the items of the chunk.
+     * @throws IOException thrown when the chunk can not be read
+     */
+    void read(int chunk, Consumer<T> sink) throws IOException;
+  }
+
+  private final int chunkCount;
+  private final boolean ordered;
+  private final ChunkReader<T> reader;
+  private final Consumer<T> consumer;
+  private final int windowSize;
+  // Permits for the chunks in flight, released once the items of a chunk are handed over.
+  private final Semaphore window;
+  // Read chunks waiting for their predecessors to be handed over, in ordered mode.
+  private final AtomicReferenceArray<List<T>> pending;
+  // The number of requests to hand over ready chunks, the thread raising it from zero drains.
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  // The next chunk to hand over, only accessed by the draining thread.
+  private int nextChunk;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private ChunkPipeline(int chunkCount, int parallelism, boolean ordered, ChunkReader<T> reader,
+      Consumer<T> consumer) {
+    this.chunkCount = chunkCount;
+    this.ordered = ordered;
+    this.reader = reader;
+    this.consumer = consumer;
+    this.windowSize = parallelism * WINDOW_PER_THREAD;
+    this.window = new Semaphore(windowSize);
+    this.pending = new AtomicReferenceArray<>(ordered ? chunkCount : 0);
+  }
+
+  /**
+   * Reads all chunks and hands their items over to the consumer. Reading stops at the first
+   * chunk that fails, as soon as the consumer throws, or when the calling thread is interrupted.
+   * In any case, the consumer is no longer called once this method returns.
+   *
+   * @param chunkCount  The number of chunks to read.
+   * @param parallelism The number of threads reading chunks in parallel.
+   * @param ordered     If true, items are handed over to the consumer one at a time, in chunk
+   *                    order. If false, items are handed over while their chunk is read,
+   *                    concurrently from multiple threads, so the consumer must be thread-safe.
+   * @param reader      The reader of a single chunk.
+   * @param consumer    The consumer receiving the items.
+   * @param <T>         The type of the items read.
+   * @throws IOException thrown when a chunk can not be read, or
+   *                     {@link InterruptedIOException} when the calling thread is interrupted
+   */
+  static <T> void run(int chunkCount, int parallelism, boolean ordered, ChunkReader<T> reader,
+      Consumer<T> consumer) throws IOException {
+    new ChunkPipeline<>(chunkCount, parallelism, ordered, reader, consumer).run(parallelism);
+  }
+
+  private void run(int parallelism) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (int chunk = 0; chunk < chunkCount && failure.get() == null; chunk++) {
+        window.acquire();
+        int submitted = chunk;
+        pool.execute(() -> readChunk(submitted));
+      }
+      // All permits are back once every submitted chunk has been handed over.
+      window.acquire(windowSize);
+    } catch (InterruptedException e) {
+      failure.compareAndSet(null, new InterruptedIOException("Interrupted while reading."));
+      // Stop the chunks in flight, and wait for them so that none calls the consumer after return.
+      pool.shutdownNow();
+      awaitTermination(pool);
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdown();
+    }
+    rethrowFailure();
+  }
+
+  /**
+   * Waits until all tasks of a pool have completed, regardless of interrupts.
+   */
+  private static void awaitTermination(ForkJoinPool pool) {
+    boolean terminated = false;
+    while (!terminated) {
+      try {
+        terminated = pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        // Keep waiting, the caller restores the interrupt.
+      }
+    }
+  }
+
+  private void readChunk(int chunk) {
+    if (!ordered) {
+      try {
+        if (failure.get() == null) {
+          reader.read(chunk, consumer);
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        window.release();
+      }
+      return;
+    }
+
+    List<T> items = new ArrayList<>();
+    try {
+      if (failure.get() == null) {
+        reader.read(chunk, items::add);
+      }
+    } catch (Throwable t) {
+      failure.compareAndSet(null, t);
+      items = List.of();
+    }
+    pending.set(chunk, items);
+    drain();
+  }
+
+  /**
+   * Hands over all chunks that are ready, in order. Only the thread raising the drain requests
+   * from zero drains, and it keeps draining until no more requests arrived in the meantime.
+   */
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int requests = 1;
+    do {
+      List<T> items;
+      while (nextChunk < chunkCount && (items = pending.getAndSet(nextChunk, null)) != null) {
+        nextChunk++;
+        if (failure.get() == null) {
+          try {
+            items.forEach(consumer);
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          }
+        }
+        window.release();
+      }
+      requests = drainRequests.addAndGet(-requests);
+    } while (requests != 0);
+  }
+
+  private void rethrowFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t instanceof IOException e) {
+      throw e;
+    } else if (t instanceof RuntimeException e) {
+      throw e;
+    } else if (t instanceof Error e) {
+      throw e;
+    } else if (t != null) {
+      throw new IOException(t);
+    }
+  }
+}
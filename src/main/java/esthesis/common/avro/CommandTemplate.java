@@ -0,0 +1,122 @@
+package esthesis.common.avro;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A command request compiled into its esthesis line protocol representation, for sending the same
+ * command to many devices. The format of a command request line is:
+ * <pre>
+ *   id commandTypeExecutionType [command [arguments]]
+ * </pre>
+ * As only the id of the request differs from device to device, everything following the id is
+ * encoded once, when the template is compiled, and each line is then written by copying the id
+ * and the pre-encoded bytes into a caller-supplied buffer.
+ * <p>
+ * Templates are immutable and can be shared by multiple threads.
+ */
+public final class CommandTemplate {
+
+  // The UTF-8 encoded part of the line following the id.
+  private final byte[] suffix;
+
+  private CommandTemplate(byte[] suffix) {
+    this.suffix = suffix;
+  }
+
+  /**
+   * Compiles the command of a command request into a template. The id of the request, if any, is
+   * ignored.
+   *
+   * @param msg The command request to compile.
+   * @return The template.
+   */
+  public static CommandTemplate compile(EsthesisCommandRequestMessage msg) {
+    StringBuilder suffix = new StringBuilder();
+    try {
+      appendSuffix(msg, suffix);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return new CommandTemplate(suffix.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Appends the line protocol representation of a command request.
+   *
+   * @param msg The command request.
+   * @param out The destination to append to.
+   * @throws IOException thrown when the destination can not be written to
+   */
+  static void append(EsthesisCommandRequestMessage msg, Appendable out) throws IOException {
+    out.append(msg.getId());
+    appendSuffix(msg, out);
+  }
+
+  private static void appendSuffix(EsthesisCommandRequestMessage msg, Appendable out)
+      throws IOException {
+    // Add the type and the execution type of the command.
+    out.append(' ').append(msg.getCommandType().name()).append(msg.getExecutionType().name());
+
+    // Add the command and its arguments, if any.
+    if (StringUtils.isNotBlank(msg.getCommand())) {
+      out.append(' ').append(msg.getCommand());
+      if (StringUtils.isNotBlank(msg.getArguments())) {
+        out.append(' ').append(msg.getArguments());
+      }
+    }
+  }
+
+  /**
+   * Writes the line of the command request with a given id into a buffer, starting at its current
+   * position. On return, the position of the buffer is advanced past the line. If the line does
+   * not fit in the remaining bytes of the buffer, the position of the buffer is left unchanged.
+   *
+   * @param id  The id of the command request.
+   * @param out The buffer to write the line into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the line does not fit in the buffer.
+   */
+  public int write(CharSequence id, ByteBuffer out) {
+    int start = out.position();
+    try {
+      int length = id.length();
+      for (int i = 0; i < length; i++) {
+        char c = id.charAt(i);
+        if (c >= 0x80) {
+          // Ids are ASCII in practice, so other ids are encoded the slow way.
+          out.position(start);
+          out.put(id.toString().getBytes(StandardCharsets.UTF_8));
+          break;
+        }
+        out.put((byte) c);
+      }
+      out.put(suffix);
+    } catch (BufferOverflowException e) {
+      out.position(start);
+      throw e;
+    }
+
+    return out.position() - start;
+  }
+
+  /**
+   * Returns the line of the command request with a given id.
+   *
+   * @param id The id of the command request.
+   * @return The UTF-8 encoded line.
+   */
+  public byte[] toBytes(CharSequence id) {
+    byte[] idBytes = id.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] line = new byte[idBytes.length + suffix.length];
+    System.arraycopy(idBytes, 0, line, 0, idBytes.length);
+    System.arraycopy(suffix, 0, line, idBytes.length, suffix.length);
+
+    return line;
+  }
+}
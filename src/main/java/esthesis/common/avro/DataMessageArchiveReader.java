@@ -0,0 +1,190 @@
+package esthesis.common.avro;
+
+import esthesis.common.exception.QLimitException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Replays {@link EsthesisDataMessage}s archived by a {@link DataMessageArchiveWriter}. Each
+ * segment is memory-mapped and split into byte ranges of roughly equal size; each range is
+ * decoded on a dedicated {@link ForkJoinPool}, starting from the first block whose sync marker
+ * follows the start of the range, so that the blocks of a segment are decompressed and decoded
+ * in parallel. At most two ranges per thread are decoded ahead of the consumer, see
+ * {@link ChunkPipeline}, so memory use does not grow with the size of a segment.
+ */
+@Slf4j
+public class DataMessageArchiveReader {
+
+  // The default size of the ranges a segment is split into.
+  public static final int DEFAULT_SPLIT_SIZE = 4 * 1024 * 1024;
+
+  private final int parallelism;
+  private final int splitSize;
+
+  /**
+   * Creates a reader using all available processors and the default split size.
+   */
+  public DataMessageArchiveReader() {
+    this(Runtime.getRuntime().availableProcessors(), DEFAULT_SPLIT_SIZE);
+  }
+
+  /**
+   * Creates a reader.
+   *
+   * @param parallelism The number of threads decoding ranges in parallel.
+   * @param splitSize   The approximate size of each range in bytes. Ranges smaller than a block
+   *                    are pointless, as a block is always decoded as a whole.
+   */
+  public DataMessageArchiveReader(int parallelism, int splitSize) {
+    Validate.isTrue(parallelism > 0, "Parallelism must be positive.");
+    Validate.isTrue(splitSize > 0, "Split size must be positive.");
+    this.parallelism = parallelism;
+    this.splitSize = splitSize;
+  }
+
+  /**
+   * Replays all complete segments of an archive, in the order they were written. Partially
+   * written segments are skipped; they are salvaged into complete segments once a
+   * {@link DataMessageArchiveWriter} is created for the archive.
+   *
+   * @param directory The directory holding the segments.
+   * @param ordered   If true, messages are handed over to the consumer one at a time, in the
+   *                  order they were written. If false, messages are handed over as soon as the
+   *                  range they belong to is decoded, concurrently from multiple threads, so the
+   *                  consumer must be thread-safe.
+   * @param consumer  The consumer receiving the messages.
+   * @return The number of messages replayed.
+   * @throws IOException thrown when a segment can not be read
+   */
+  public long readArchive(Path directory, boolean ordered,
+      Consumer<EsthesisDataMessage> consumer) throws IOException {
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(directory)) {
+      segments = files.filter(file -> file.getFileName().toString()
+          .endsWith(DataMessageArchiveWriter.SEGMENT_SUFFIX)).sorted().toList();
+    }
+    long count = 0;
+    for (Path segment : segments) {
+      count += readSegment(segment, ordered, consumer);
+    }
+
+    return count;
+  }
+
+  /**
+   * Replays a single segment of an archive, see {@link #readArchive(Path, boolean, Consumer)}.
+   *
+   * @param segment  The segment to replay.
+   * @param ordered  Whether messages are handed over in the order they were written.
+   * @param consumer The consumer receiving the messages.
+   * @return The number of messages replayed.
+   * @throws IOException thrown when the segment can not be read
+   */
+  public long readSegment(Path segment, boolean ordered, Consumer<EsthesisDataMessage> consumer)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new QLimitException("Segment '{}' of {} bytes is too large to be read.", segment,
+            size);
+      }
+      ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+      int splitCount = (int) Math.max(1, (size + splitSize - 1) / splitSize);
+      log.debug("Reading segment '{}' of {} bytes in {} ranges using parallelism {}.", segment,
+          size, splitCount, parallelism);
+
+      Replay replay = new Replay(segment, buffer);
+      ChunkPipeline.run(splitCount, parallelism, ordered, replay::readSplit, consumer);
+
+      return replay.messageCount.get();
+    }
+  }
+
+  /**
+   * The shared state of the replay of a single segment.
+   */
+  private class Replay {
+
+    private final Path segment;
+    private final ByteBuffer buffer;
+    private final AtomicLong messageCount = new AtomicLong();
+
+    Replay(Path segment, ByteBuffer buffer) {
+      this.segment = segment;
+      this.buffer = buffer;
+    }
+
+    void readSplit(int split, Consumer<EsthesisDataMessage> sink) throws IOException {
+      long start = (long) split * splitSize;
+      long end = start + splitSize;
+      try (DataFileReader<EsthesisDataMessage> reader = new DataFileReader<>(
+          new ByteBufferInput(buffer.duplicate()),
+          new SpecificDatumReader<>(EsthesisDataMessage.class))) {
+        reader.sync(start);
+        while (reader.hasNext() && !reader.pastSync(end)) {
+          sink.accept(reader.next());
+          messageCount.incrementAndGet();
+        }
+      } catch (AvroRuntimeException e) {
+        throw new IOException("Segment '" + segment + "' is corrupt.", e);
+      }
+    }
+  }
+
+  /**
+   * A seekable input reading from a buffer, e.g. a memory-mapped segment.
+   */
+  private static final class ByteBufferInput implements SeekableInput {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInput(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void seek(long position) {
+      buffer.position((int) position);
+    }
+
+    @Override
+    public long tell() {
+      return buffer.position();
+    }
+
+    @Override
+    public long length() {
+      return buffer.limit();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return len == 0 ? 0 : -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
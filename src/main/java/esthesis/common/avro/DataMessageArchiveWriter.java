@@ -0,0 +1,311 @@
+package esthesis.common.avro;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Archives streams of {@link EsthesisDataMessage}s into a directory of segments, each one an Avro
+ * object container file, e.g. to replay telemetry later on with a
+ * {@link DataMessageArchiveReader}. Messages are written in compressed blocks of a configurable
+ * size, and a new segment is started once the current one exceeds a maximum size or age.
+ * <p>
+ * Segments are named after the time they were started, so that they sort in the order they were
+ * written. A segment is written under a temporary name, ending in {@link #PART_SUFFIX}, and only
+ * gets its final name, ending in {@link #SEGMENT_SUFFIX}, once it is complete, so readers never
+ * see partially written segments.
+ * <p>
+ * When a writer is created, segments left partially written by a writer that stopped without
+ * being closed, e.g. after a crash, are salvaged: the messages of their blocks that were written
+ * completely are copied into a complete segment under the original name, and the rest, i.e. the
+ * messages appended since the last block was written, is lost.
+ * <p>
+ * Writers are not thread-safe.
+ */
+@Slf4j
+public class DataMessageArchiveWriter implements Closeable {
+
+  // The suffixes of complete and partially written segments.
+  public static final String SEGMENT_SUFFIX = ".avro";
+  public static final String PART_SUFFIX = ".avro.part";
+  // The suffix of segments being salvaged from partially written ones.
+  private static final String SALVAGE_SUFFIX = ".avro.salvage";
+
+  // The defaults of the archive settings.
+  public static final String DEFAULT_CODEC = "deflate";
+  public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+  public static final Duration DEFAULT_MAX_SEGMENT_AGE = Duration.ofHours(1);
+
+  // The classes the optional codecs depend on, by codec name.
+  private static final Map<String, String> CODEC_DEPENDENCIES = Map.of(
+      "snappy", "org.xerial.snappy.Snappy",
+      "zstandard", "com.github.luben.zstd.Zstd",
+      "xz", "org.tukaani.xz.XZOutputStream",
+      "bzip2", "org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream");
+
+  private final Path directory;
+  private final CodecFactory codec;
+  private final int blockSize;
+  private final long maxSegmentSize;
+  private final long maxSegmentAgeNanos;
+  private final SpecificDatumWriter<EsthesisDataMessage> datumWriter =
+      new SpecificDatumWriter<>(EsthesisDataMessage.class);
+
+  // The segment being written, if any.
+  private DataFileWriter<EsthesisDataMessage> segmentWriter;
+  private CountingOutputStream segmentOut;
+  private Path segment;
+  private long segmentStartNanos;
+  // The sequence number of the next segment, disambiguating segments started at the same time.
+  private int segmentSequence;
+
+  /**
+   * Creates a writer using the default settings.
+   *
+   * @param directory The directory to write segments into.
+   * @throws IOException thrown when partially written segments can not be salvaged
+   */
+  public DataMessageArchiveWriter(Path directory) throws IOException {
+    this(directory, DEFAULT_CODEC, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_SEGMENT_SIZE,
+        DEFAULT_MAX_SEGMENT_AGE);
+  }
+
+  /**
+   * Creates a writer.
+   *
+   * @param directory      The directory to write segments into.
+   * @param codec          The name of the compression codec, as understood by
+   *                       {@link CodecFactory#fromString(String)}, e.g. "deflate", "snappy" or
+   *                       "zstandard". Codecs whose libraries are not available fall back to
+   *                       {@link #DEFAULT_CODEC}.
+   * @param blockSize      The approximate uncompressed size of each block in bytes.
+   * @param maxSegmentSize The size in bytes after which a new segment is started. Segments may
+   *                       exceed this size by up to a block.
+   * @param maxSegmentAge  The age after which a new segment is started, checked as messages are
+   *                       appended.
+   * @throws IOException thrown when partially written segments can not be salvaged
+   */
+  public DataMessageArchiveWriter(Path directory, String codec, int blockSize,
+      long maxSegmentSize, Duration maxSegmentAge) throws IOException {
+    Validate.isTrue(blockSize >= 32 && blockSize <= 1 << 30,
+        "Block size must be between 32 bytes and 1 GB.");
+    Validate.isTrue(maxSegmentSize > 0 && maxSegmentSize <= Integer.MAX_VALUE - blockSize,
+        "Maximum segment size must be positive and less than 2 GB.");
+    Validate.isTrue(maxSegmentAge.compareTo(Duration.ZERO) > 0,
+        "Maximum segment age must be positive.");
+    this.directory = directory;
+    this.codec = toCodecFactory(codec);
+    this.blockSize = blockSize;
+    this.maxSegmentSize = maxSegmentSize;
+    this.maxSegmentAgeNanos = maxSegmentAge.toNanos();
+    salvagePartialSegments();
+  }
+
+  private static CodecFactory toCodecFactory(String codec) {
+    String dependency = CODEC_DEPENDENCIES.get(codec);
+    if (dependency != null) {
+      try {
+        Class.forName(dependency, false, DataMessageArchiveWriter.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        log.warn("Codec '{}' is not available, falling back to '{}'.", codec, DEFAULT_CODEC);
+        return CodecFactory.fromString(DEFAULT_CODEC);
+      }
+    }
+    try {
+      return CodecFactory.fromString(codec);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Unknown codec '" + codec + "'.", e);
+    }
+  }
+
+  /**
+   * Salvages the segments left partially written in the directory of this writer, see
+   * {@link DataMessageArchiveWriter}.
+   */
+  private void salvagePartialSegments() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> parts;
+    try (Stream<Path> files = Files.list(directory)) {
+      parts = files.filter(file -> file.getFileName().toString().endsWith(PART_SUFFIX))
+          .sorted().toList();
+    }
+    for (Path part : parts) {
+      salvage(part);
+    }
+  }
+
+  private void salvage(Path part) throws IOException {
+    String name = part.getFileName().toString();
+    String base = name.substring(0, name.length() - PART_SUFFIX.length());
+    Path salvaged = part.resolveSibling(base + SALVAGE_SUFFIX);
+    long count = 0;
+    try (DataFileReader<EsthesisDataMessage> reader = openPartialSegment(part)) {
+      if (reader != null) {
+        try (DataFileWriter<EsthesisDataMessage> writer = new DataFileWriter<>(datumWriter)
+            .setCodec(codec).setSyncInterval(blockSize)) {
+          writer.create(EsthesisDataMessage.getClassSchema(), salvaged.toFile());
+          count = copyReadable(part, reader, writer);
+        }
+      }
+    }
+
+    if (count > 0) {
+      Files.move(salvaged, part.resolveSibling(base + SEGMENT_SUFFIX),
+          StandardCopyOption.ATOMIC_MOVE);
+      log.warn("Salvaged {} messages from partially written archive segment '{}', messages "
+          + "appended after its last complete block are lost.", count, part);
+    } else {
+      Files.deleteIfExists(salvaged);
+      log.warn("Discarded partially written archive segment '{}' without complete blocks.",
+          part);
+    }
+    Files.delete(part);
+  }
+
+  private static DataFileReader<EsthesisDataMessage> openPartialSegment(Path part) {
+    try {
+      return new DataFileReader<>(part.toFile(),
+          new SpecificDatumReader<>(EsthesisDataMessage.class));
+    } catch (IOException e) {
+      // The header of the segment was not written completely.
+      log.debug("Could not open partially written archive segment '{}'.", part, e);
+      return null;
+    }
+  }
+
+  private static long copyReadable(Path part, DataFileReader<EsthesisDataMessage> reader,
+      DataFileWriter<EsthesisDataMessage> writer) throws IOException {
+    long count = 0;
+    while (true) {
+      EsthesisDataMessage message;
+      try {
+        if (!reader.hasNext()) {
+          break;
+        }
+        message = reader.next();
+      } catch (RuntimeException e) {
+        // The block being written when the writer stopped is incomplete or corrupt, and decoding
+        // it may fail in any way.
+        log.debug("Stopped salvaging partially written archive segment '{}' at an incomplete "
+            + "block.", part, e);
+        break;
+      }
+      writer.append(message);
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * Appends a message to the archive, starting a new segment if the current one is due.
+   *
+   * @param message The message to append.
+   * @throws IOException thrown when the message can not be written
+   */
+  public void append(EsthesisDataMessage message) throws IOException {
+    if (segmentWriter != null && (segmentOut.count >= maxSegmentSize
+        || System.nanoTime() - segmentStartNanos >= maxSegmentAgeNanos)) {
+      closeSegment();
+    }
+    if (segmentWriter == null) {
+      openSegment();
+    }
+    segmentWriter.append(message);
+  }
+
+  /**
+   * Writes the messages appended so far to the current segment as a complete block. The segment
+   * keeps its temporary name until it is complete.
+   *
+   * @throws IOException thrown when the messages can not be written
+   */
+  public void flush() throws IOException {
+    if (segmentWriter != null) {
+      segmentWriter.flush();
+    }
+  }
+
+  /**
+   * Completes the current segment, if any.
+   *
+   * @throws IOException thrown when the segment can not be completed
+   */
+  @Override
+  public void close() throws IOException {
+    if (segmentWriter != null) {
+      closeSegment();
+    }
+  }
+
+  private void openSegment() throws IOException {
+    segment = directory.resolve(String.format("%013d-%06d", System.currentTimeMillis(),
+        segmentSequence++));
+    segmentOut = new CountingOutputStream(
+        Files.newOutputStream(segment.resolveSibling(segment.getFileName() + PART_SUFFIX)));
+    segmentWriter = new DataFileWriter<>(datumWriter).setCodec(codec).setSyncInterval(blockSize);
+    try {
+      segmentWriter.create(EsthesisDataMessage.getClassSchema(), segmentOut);
+    } catch (IOException e) {
+      segmentOut.close();
+      segmentWriter = null;
+      throw e;
+    }
+    segmentStartNanos = System.nanoTime();
+    log.debug("Started archive segment '{}'.", segment);
+  }
+
+  private void closeSegment() throws IOException {
+    try {
+      segmentWriter.close();
+    } finally {
+      segmentWriter = null;
+    }
+    Files.move(segment.resolveSibling(segment.getFileName() + PART_SUFFIX),
+        segment.resolveSibling(segment.getFileName() + SEGMENT_SUFFIX),
+        StandardCopyOption.ATOMIC_MOVE);
+    log.debug("Completed archive segment '{}' of {} bytes.", segment, segmentOut.count);
+  }
+
+  /**
+   * An output stream counting the bytes written through it.
+   */
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package esthesis.common.avro;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.apache.avro.Conversions.DecimalConversion;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericFixed;
+
+/**
+ * Converts esthesis data messages between version 1 of the schema, in which all values are
+ * carried as strings, and version 2, in which values are carried in their native types
+ * ({@code esthesis.common.avro.v2}).
+ * <p>
+ * From version 1 to version 2, values are converted according to their value type: integral
+ * values to long, floating point values to double, booleans to boolean, and big decimals to the
+ * decimal logical type. Values that do not fit their target type, e.g. a big integer beyond the
+ * range of long or a value not matching its type hint, are carried as strings, keeping their value
+ * type. From version 2 to version 1, values are rendered back as strings; numeric values are
+ * numerically equal to the original ones, although their text may differ (e.g. {@code 1.50}
+ * becomes {@code 1.5}). Binary values, which only exist in version 2, are rendered as Base64
+ * encoded strings.
+ */
+public final class DataMessageConverter {
+
+  // The schema and conversion of the decimal values of version 2.
+  private static final Schema DECIMAL_SCHEMA = esthesis.common.avro.v2.Decimal.getClassSchema();
+  private static final LogicalTypes.Decimal DECIMAL_TYPE =
+      (LogicalTypes.Decimal) DECIMAL_SCHEMA.getLogicalType();
+  private static final DecimalConversion DECIMAL_CONVERSION = new DecimalConversion();
+
+  private DataMessageConverter() {
+  }
+
+  /**
+   * Converts a version 1 data message to version 2.
+   *
+   * @param message The message to convert.
+   */
+  public static esthesis.common.avro.v2.EsthesisDataMessage toV2(EsthesisDataMessage message) {
+    return new esthesis.common.avro.v2.EsthesisDataMessage(message.getId(),
+        message.getCorrelationId(), message.getHardwareId(), message.getSeenBy(),
+        message.getSeenAt(),
+        esthesis.common.avro.v2.MessageTypeEnum.valueOf(message.getType().name()),
+        message.getChannel(), toV2(message.getPayload()), message.getSeenAtMicros());
+  }
+
+  /**
+   * Converts a version 2 data message to version 1.
+   *
+   * @param message The message to convert.
+   */
+  public static EsthesisDataMessage toV1(esthesis.common.avro.v2.EsthesisDataMessage message) {
+    return new EsthesisDataMessage(message.getId(), message.getCorrelationId(),
+        message.getHardwareId(), message.getSeenBy(), message.getSeenAt(),
+        MessageTypeEnum.valueOf(message.getType().name()), message.getChannel(),
+        toV1(message.getPayload()), message.getSeenAtMicros());
+  }
+
+  /**
+   * Converts a version 1 payload to version 2.
+   *
+   * @param payload The payload to convert.
+   */
+  public static esthesis.common.avro.v2.PayloadData toV2(PayloadData payload) {
+    List<esthesis.common.avro.v2.ValueData> values = new ArrayList<>(payload.getValues().size());
+    for (ValueData value : payload.getValues()) {
+      values.add(toV2(value));
+    }
+    return new esthesis.common.avro.v2.PayloadData(payload.getCategory(), payload.getTimestamp(),
+        values, payload.getTimestampMicros());
+  }
+
+  /**
+   * Converts a version 2 payload to version 1.
+   *
+   * @param payload The payload to convert.
+   */
+  public static PayloadData toV1(esthesis.common.avro.v2.PayloadData payload) {
+    List<ValueData> values = new ArrayList<>(payload.getValues().size());
+    for (esthesis.common.avro.v2.ValueData value : payload.getValues()) {
+      values.add(toV1(value));
+    }
+    return new PayloadData(payload.getCategory(), payload.getTimestamp(), values,
+        payload.getTimestampMicros());
+  }
+
+  /**
+   * Converts a version 1 value to version 2, see {@link DataMessageConverter}.
+   *
+   * @param value The value to convert.
+   */
+  public static esthesis.common.avro.v2.ValueData toV2(ValueData value) {
+    return new esthesis.common.avro.v2.ValueData(value.getName(),
+        toNative(value.getValue(), value.getValueType()),
+        esthesis.common.avro.v2.ValueTypeEnum.valueOf(value.getValueType().name()));
+  }
+
+  /**
+   * Converts a version 2 value to version 1, see {@link DataMessageConverter}.
+   *
+   * @param value The value to convert.
+   */
+  public static ValueData toV1(esthesis.common.avro.v2.ValueData value) {
+    if (value.getValue() instanceof ByteBuffer bytes) {
+      return new ValueData(value.getName(),
+          Base64.getEncoder().encodeToString(toArray(bytes)), ValueTypeEnum.STRING);
+    }
+    return new ValueData(value.getName(), toText(value.getValue(), value.getValueType()),
+        toV1(value.getValueType()));
+  }
+
+  /**
+   * Converts a version 2 value type to version 1. Binary values, which only exist in version 2,
+   * are rendered as strings.
+   */
+  private static ValueTypeEnum toV1(esthesis.common.avro.v2.ValueTypeEnum valueType) {
+    return valueType == esthesis.common.avro.v2.ValueTypeEnum.BYTES
+        ? ValueTypeEnum.STRING : ValueTypeEnum.valueOf(valueType.name());
+  }
+
+  /**
+   * Converts the text of a value to its native type, falling back to the text itself when it
+   * does not fit the native type.
+   */
+  private static Object toNative(String text, ValueTypeEnum valueType) {
+    try {
+      return switch (valueType) {
+        case BYTE, SHORT, INTEGER, LONG, BIG_INTEGER -> Long.parseLong(text);
+        case FLOAT, DOUBLE -> toFloatingPoint(text, valueType);
+        case BOOLEAN -> text.equalsIgnoreCase("true") ? Boolean.TRUE
+            : text.equalsIgnoreCase("false") ? Boolean.FALSE : text;
+        case BIG_DECIMAL -> toDecimal(new BigDecimal(text));
+        default -> text;
+      };
+    } catch (NumberFormatException | ArithmeticException e) {
+      return text;
+    }
+  }
+
+  /**
+   * Parses a floating point value, falling back to its text when it is beyond the range of its
+   * value type, as it would otherwise turn into an infinity.
+   */
+  private static Object toFloatingPoint(String text, ValueTypeEnum valueType) {
+    double value = Double.parseDouble(text);
+    boolean infinite = valueType == ValueTypeEnum.FLOAT
+        ? Float.isInfinite((float) value) : Double.isInfinite(value);
+    // Infinities stated literally are the only text containing "Infinity" that parses.
+    return infinite && !text.contains("Infinity") ? text : value;
+  }
+
+  /**
+   * Renders a native value as the text of a version 1 value.
+   */
+  private static String toText(Object value, esthesis.common.avro.v2.ValueTypeEnum valueType) {
+    if (value instanceof Double d && valueType == esthesis.common.avro.v2.ValueTypeEnum.FLOAT) {
+      return Float.toString(d.floatValue());
+    } else if (value instanceof GenericFixed fixed) {
+      value = DECIMAL_CONVERSION.fromFixed(fixed, DECIMAL_SCHEMA, DECIMAL_TYPE);
+    }
+    if (value instanceof BigDecimal decimal) {
+      return decimal.stripTrailingZeros().toPlainString();
+    }
+    return String.valueOf(value);
+  }
+
+  /**
+   * Encodes a decimal as the decimal logical type of version 2.
+   *
+   * @throws ArithmeticException thrown when the decimal does not fit the decimal logical type.
+   */
+  private static esthesis.common.avro.v2.Decimal toDecimal(BigDecimal decimal) {
+    BigDecimal scaled = decimal.setScale(DECIMAL_TYPE.getScale());
+    if (scaled.precision() > DECIMAL_TYPE.getPrecision()) {
+      throw new ArithmeticException("Decimal exceeds the supported precision.");
+    }
+    return new esthesis.common.avro.v2.Decimal(
+        DECIMAL_CONVERSION.toFixed(scaled, DECIMAL_SCHEMA, DECIMAL_TYPE).bytes());
+  }
+
+  private static byte[] toArray(ByteBuffer bytes) {
+    byte[] array = new byte[bytes.remaining()];
+    bytes.duplicate().get(array);
+    return array;
+  }
+}
@@ -0,0 +1,64 @@
+package esthesis.common.avro;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+/**
+ * The result of parsing a multi-line esthesis line protocol payload. Lines that were parsed
+ * successfully are available as {@link PayloadData}, in the order they appeared in the payload,
+ * while lines that could not be parsed are reported as {@link LineError}s. Blank lines and comment
+ * lines are neither payloads nor errors, they are only counted.
+ */
+@Getter
+public class ELPBatchResult {
+
+  private final List<PayloadData> payloads = new ArrayList<>();
+  private final List<LineError> errors = new ArrayList<>();
+  private int skippedLines;
+
+  /**
+   * A compact description of a line that could not be parsed.
+   */
+  @Data
+  @AllArgsConstructor
+  public static class LineError {
+
+    // The line number in the payload, starting from 1.
+    private long lineNumber;
+    // The reason the line was rejected.
+    private ELPParseError error;
+    // The offset within the line at which the problem was found.
+    private int offset;
+    // A short description of the problem.
+    private String reason;
+  }
+
+  /**
+   * Returns true if all non-blank, non-comment lines were parsed successfully.
+   */
+  public boolean isSuccessful() {
+    return errors.isEmpty();
+  }
+
+  /**
+   * Returns the total number of lines processed, including skipped and erroneous lines.
+   */
+  public long getLineCount() {
+    return (long) payloads.size() + errors.size() + skippedLines;
+  }
+
+  void addPayload(PayloadData payload) {
+    payloads.add(payload);
+  }
+
+  void addError(long lineNumber, ELPParseError error, int offset) {
+    errors.add(new LineError(lineNumber, error, offset, error.getDescription()));
+  }
+
+  void addSkippedLine() {
+    skippedLines++;
+  }
+}
@@ -0,0 +1,42 @@
+package esthesis.common.avro;
+
+import esthesis.common.avro.ELPBatchResult.LineError;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A summary of a bulk import of an esthesis line protocol file, see {@link ELPBulkImporter}. The
+ * parsed payloads themselves are handed over to the caller while the import progresses, so only
+ * their count is kept here.
+ */
+@Getter
+@AllArgsConstructor
+public class ELPBulkImportResult {
+
+  // The number of lines parsed successfully.
+  private final long payloadCount;
+  // The number of blank and comment lines.
+  private final long skippedLines;
+  // The first lines that could not be parsed, in file order, with line numbers relative to the
+  // start of the file. At most as many as configured in the importer are detailed.
+  private final List<LineError> errors;
+  // The number of lines that could not be parsed, including those not detailed in the errors.
+  private final long errorCount;
+  // The number of chunks the file was split into.
+  private final int chunkCount;
+
+  /**
+   * Returns true if all non-blank, non-comment lines were parsed successfully.
+   */
+  public boolean isSuccessful() {
+    return errorCount == 0;
+  }
+
+  /**
+   * Returns the total number of lines processed, including skipped and erroneous lines.
+   */
+  public long getLineCount() {
+    return payloadCount + skippedLines + errorCount;
+  }
+}
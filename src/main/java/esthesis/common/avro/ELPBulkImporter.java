@@ -0,0 +1,233 @@
+package esthesis.common.avro;
+
+import esthesis.common.avro.ELPBatchResult.LineError;
+import esthesis.common.exception.QLimitException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Parses large, multi-line esthesis line protocol files in parallel, e.g. for backfills and bulk
+ * imports. The file is split at line boundaries into chunks of roughly equal size, each chunk is
+ * memory-mapped and parsed in place (without being copied or decoded first) on a dedicated
+ * {@link ForkJoinPool}, and the resulting payloads are handed over to a caller-supplied consumer.
+ * At most two chunks per thread are parsed ahead of the consumer, see {@link ChunkPipeline}, so
+ * memory use does not grow with the size of the file.
+ * <p>
+ * Lines are parsed as described in {@link AvroUtils#parsePayloads(CharSequence)}; invalid lines
+ * do not abort the import, they are counted in the returned {@link ELPBulkImportResult}, which
+ * details the first {@link #DEFAULT_MAX_ERRORS} of them (or as many as configured), so that a
+ * file with a high error rate, e.g. one in the wrong format, does not exhaust memory either.
+ */
+@Slf4j
+public class ELPBulkImporter {
+
+  // The default size of the chunks a file is split into.
+  public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+  // The default number of invalid lines detailed in the result of an import.
+  public static final int DEFAULT_MAX_ERRORS = 1000;
+
+  // The size of the buffer used when looking for the end of the line a chunk boundary falls in.
+  private static final int BOUNDARY_SCAN_BUFFER_SIZE = 8192;
+
+  private final AvroUtils avroUtils;
+  private final int parallelism;
+  private final int chunkSize;
+  private final int maxErrors;
+
+  /**
+   * Creates an importer using all available processors and the default chunk size.
+   *
+   * @param avroUtils The utility used to parse lines.
+   */
+  public ELPBulkImporter(AvroUtils avroUtils) {
+    this(avroUtils, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates an importer.
+   *
+   * @param avroUtils   The utility used to parse lines.
+   * @param parallelism The number of threads parsing chunks in parallel.
+   * @param chunkSize   The approximate size of each chunk in bytes. Chunks are extended to the end
+   *                    of the line their boundary falls in.
+   */
+  public ELPBulkImporter(AvroUtils avroUtils, int parallelism, int chunkSize) {
+    this(avroUtils, parallelism, chunkSize, DEFAULT_MAX_ERRORS);
+  }
+
+  /**
+   * Creates an importer.
+   *
+   * @param avroUtils   The utility used to parse lines.
+   * @param parallelism The number of threads parsing chunks in parallel.
+   * @param chunkSize   The approximate size of each chunk in bytes. Chunks are extended to the end
+   *                    of the line their boundary falls in.
+   * @param maxErrors   The maximum number of invalid lines detailed in the result of an import.
+   *                    Invalid lines beyond that are only counted.
+   */
+  public ELPBulkImporter(AvroUtils avroUtils, int parallelism, int chunkSize, int maxErrors) {
+    Validate.isTrue(parallelism > 0, "Parallelism must be positive.");
+    Validate.isTrue(chunkSize > 0, "Chunk size must be positive.");
+    Validate.isTrue(maxErrors >= 0, "Maximum number of errors must not be negative.");
+    this.avroUtils = avroUtils;
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+    this.maxErrors = maxErrors;
+  }
+
+  /**
+   * Imports an esthesis line protocol file.
+   *
+   * @param file     The file to import, encoded in UTF-8.
+   * @param ordered  If true, payloads are handed over to the consumer one at a time, in the order
+   *                 they appear in the file. If false, payloads are handed over as soon as the
+   *                 chunk they belong to is parsed, concurrently from multiple threads, so the
+   *                 consumer must be thread-safe. The import stops if the consumer throws.
+   * @param consumer The consumer receiving the parsed payloads.
+   * @return A summary of the import.
+   * @throws IOException thrown when the file can not be read
+   */
+  public ELPBulkImportResult importFile(Path file, boolean ordered,
+      Consumer<PayloadData> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long[] boundaries = findChunkBoundaries(channel);
+      int chunkCount = boundaries.length - 1;
+      log.debug("Importing file '{}' of {} bytes in {} chunks using parallelism {}.", file,
+          channel.size(), chunkCount, parallelism);
+
+      Import importState = new Import(channel, boundaries);
+      ChunkPipeline.run(chunkCount, parallelism, ordered, importState::parseChunk, consumer);
+
+      return importState.toResult();
+    }
+  }
+
+  /**
+   * Splits a file into chunks of approximately {@link #chunkSize} bytes, each one ending right
+   * after a line terminator (or at the end of the file).
+   *
+   * @return The chunk boundaries; chunk i spans from boundaries[i] to boundaries[i + 1].
+   */
+  private long[] findChunkBoundaries(FileChannel channel) throws IOException {
+    long size = channel.size();
+    List<Long> boundaries = new ArrayList<>();
+    boundaries.add(0L);
+    ByteBuffer scanBuffer = ByteBuffer.allocate(BOUNDARY_SCAN_BUFFER_SIZE);
+    long start = 0;
+    while (start < size) {
+      long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize,
+          size, scanBuffer);
+      if (end - start > Integer.MAX_VALUE) {
+        throw new QLimitException("A line starting within byte range [{}, {}) is too long to be "
+            + "imported.", start, end);
+      }
+      boundaries.add(end);
+      start = end;
+    }
+
+    return boundaries.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /**
+   * Finds the position right after the first line terminator at or after the given position.
+   */
+  private static long nextLineStart(FileChannel channel, long position, long size,
+      ByteBuffer scanBuffer) throws IOException {
+    while (position < size) {
+      scanBuffer.clear();
+      int read = channel.read(scanBuffer, position);
+      for (int i = 0; i < read; i++) {
+        if (scanBuffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += Math.max(read, 0);
+    }
+
+    return size;
+  }
+
+  /**
+   * An invalid line, with its line number relative to the start of its chunk.
+   */
+  private record ChunkError(int chunk, LineError error) {
+
+    // Orders errors by their position in the file.
+    static final Comparator<ChunkError> FILE_ORDER = Comparator.comparingInt(ChunkError::chunk)
+        .thenComparingLong(e -> e.error().getLineNumber());
+  }
+
+  /**
+   * The shared state of a single import.
+   */
+  private class Import {
+
+    private final FileChannel channel;
+    private final long[] boundaries;
+    private final long[] lineCounts;
+    // The first errors of the file found so far, with the last one at the head.
+    private final PriorityQueue<ChunkError> errors =
+        new PriorityQueue<>(ChunkError.FILE_ORDER.reversed());
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong payloadCount = new AtomicLong();
+    private final AtomicLong skippedLines = new AtomicLong();
+
+    Import(FileChannel channel, long[] boundaries) {
+      this.channel = channel;
+      this.boundaries = boundaries;
+      this.lineCounts = new long[boundaries.length - 1];
+    }
+
+    void parseChunk(int chunk, Consumer<PayloadData> sink) throws IOException {
+      ELPBatchResult result = new ELPBatchResult();
+      int length = (int) (boundaries[chunk + 1] - boundaries[chunk]);
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, boundaries[chunk], length);
+      avroUtils.parseLines(new ByteBufferCharSequence(buffer), 0, length, true,
+          new ELPTokenizer(), result);
+
+      synchronized (this) {
+        lineCounts[chunk] = result.getLineCount();
+        for (LineError error : result.getErrors()) {
+          errors.add(new ChunkError(chunk, error));
+          if (errors.size() > maxErrors) {
+            errors.poll();
+          }
+        }
+      }
+      errorCount.addAndGet(result.getErrors().size());
+      payloadCount.addAndGet(result.getPayloads().size());
+      skippedLines.addAndGet(result.getSkippedLines());
+      result.getPayloads().forEach(sink);
+    }
+
+    synchronized ELPBulkImportResult toResult() {
+      // Convert chunk-relative line numbers to file-relative ones.
+      long[] firstLines = new long[lineCounts.length];
+      for (int chunk = 1; chunk < lineCounts.length; chunk++) {
+        firstLines[chunk] = firstLines[chunk - 1] + lineCounts[chunk - 1];
+      }
+      List<LineError> fileErrors = errors.stream().sorted(ChunkError.FILE_ORDER)
+          .map(e -> new LineError(firstLines[e.chunk()] + e.error().getLineNumber(),
+              e.error().getError(), e.error().getOffset(), e.error().getReason()))
+          .toList();
+
+      return new ELPBulkImportResult(payloadCount.get(), skippedLines.get(), fileErrors,
+          errorCount.get(), lineCounts.length);
+    }
+  }
+}
@@ -18,7 +18,8 @@ public class ELPEntry {
   private List<ELPMeasurement> measurements;
 
   /**
-   * Represents a single measurement in an ELP entry.
+   * Represents a single measurement in an ELP entry. The value is expressed as in the line
+   * protocol, with an optional type hint, unless the type of the value is given explicitly.
    */
   @Data
   @AllArgsConstructor
@@ -26,6 +27,12 @@ public class ELPEntry {
 
     private String name;
     private String value;
+    // The type of the value, or null to resolve it from the value as the line protocol does.
+    private ValueTypeEnum valueType;
+
+    public ELPMeasurement(String name, String value) {
+      this(name, value, null);
+    }
   }
 
   /**
@@ -40,10 +47,32 @@ public class ELPEntry {
       this.measurements.add(new ELPMeasurement(name, value));
       return this;
     }
+
+    public ELPEntryBuilder measurement(String name, String value, ValueTypeEnum valueType) {
+      if (this.measurements == null) {
+        this.measurements = new java.util.ArrayList<>();
+      }
+      this.measurements.add(new ELPMeasurement(name, value, valueType));
+      return this;
+    }
+
+    public ELPEntryBuilder measurement(String name, long value) {
+      return measurement(name, Long.toString(value), ValueTypeEnum.LONG);
+    }
+
+    public ELPEntryBuilder measurement(String name, double value) {
+      return measurement(name, Double.toString(value), ValueTypeEnum.DOUBLE);
+    }
+
+    public ELPEntryBuilder measurement(String name, boolean value) {
+      return measurement(name, Boolean.toString(value), ValueTypeEnum.BOOLEAN);
+    }
   }
 
   /**
-   * Creates a custom string representation of the ELP entry.
+   * Creates a custom string representation of the ELP entry. Measurements are separated by
+   * spaces, so the result can not be parsed back; use {@link ELPWriter} to write entries as
+   * esthesis line protocol lines.
    *
    * @return a string representation of the ELP entry
    */
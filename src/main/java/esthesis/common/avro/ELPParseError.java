@@ -0,0 +1,29 @@
+package esthesis.common.avro;
+
+/**
+ * The reasons an esthesis line protocol message (a data line or a command reply) may be rejected
+ * by the parser.
+ */
+public enum ELPParseError {
+  EMPTY_LINE("empty line"),
+  COMMENT("comment line"),
+  MISSING_MEASUREMENTS("at least two parts are required, the category and one or more "
+      + "measurements"),
+  INVALID_MEASUREMENT("expected a key-value pair separated by '='"),
+  UNTERMINATED_QUOTE("unterminated quoted value"),
+  UNEXPECTED_TOKEN("unexpected content after the timestamp"),
+  INVALID_TIMESTAMP("must be a valid ISO-8601 timestamp in UTC"),
+  MISSING_CORRELATION_ID("a command reply must start with the correlation ID"),
+  INVALID_REPLY_TYPE("the reply type must be 's' (success) or 'f' (failure)"),
+  MISSING_REPLY_PAYLOAD("the reply type must be followed by a space and the reply output");
+
+  private final String description;
+
+  ELPParseError(String description) {
+    this.description = description;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+}
@@ -0,0 +1,388 @@
+package esthesis.common.avro;
+
+import esthesis.common.exception.QLimitException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A durable, append-only spool of esthesis line protocol lines, e.g. for edge components to
+ * store lines while the broker is unreachable and forward them once it becomes reachable again.
+ * <p>
+ * Lines are appended as records to memory-mapped segment files of a fixed size, so an append is a
+ * single copy of the line into the mapping, without a system call; {@link #force()} makes
+ * appended records durable. Each record consists of its length and its CRC-32C checksum, as two
+ * 4-byte integers, followed by the UTF-8 encoded line. A record with a zero length marks the end
+ * of a segment; once a record does not fit in a segment, a new segment is started. Segments are
+ * named after the position of their first byte in the spool, so that positions are stable across
+ * restarts.
+ * <p>
+ * Lines are replayed with {@link #next()} from the position of the consumer cursor onwards. The
+ * cursor is persisted with {@link #commit()} once the lines read so far have been forwarded, at
+ * which point fully consumed segments are deleted; {@link #rewind()} goes back to the persisted
+ * cursor, e.g. to replay lines after a failed forward. Lines are hence delivered at least once.
+ * <p>
+ * When a spool is opened, the records of the last segment are verified, and the spool is
+ * truncated right before the first record that is incomplete or fails its checksum, i.e. the
+ * record that was being appended when the process stopped.
+ * <p>
+ * Spools are thread-safe, but a spool directory must only be opened by a single spool at a time.
+ */
+@Slf4j
+public class ELPSpool implements Closeable {
+
+  // The default size of segments.
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  // The suffix of segment files, and the name of the file holding the consumer cursor.
+  static final String SEGMENT_SUFFIX = ".spool";
+  static final String CURSOR_FILE = "cursor";
+
+  // The size of the header of each record, i.e. its length and checksum.
+  private static final int HEADER_SIZE = 8;
+  // The size of the cursor file, i.e. the cursor position and its checksum.
+  private static final int CURSOR_SIZE = 12;
+
+  private final Path directory;
+  private final int segmentSize;
+  // The segments, by the position of their first byte.
+  private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+  private final MappedByteBuffer cursor;
+  private final CRC32C crc = new CRC32C();
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBufferCharSequence line = new ByteBufferCharSequence();
+
+  // The segment being appended to, the position of its first byte and the offset to append at.
+  private MappedByteBuffer tail;
+  private long tailStart;
+  private int tailOffset;
+  // The positions of the next record to read, and of the persisted consumer cursor.
+  private long readPosition;
+  private long committedPosition;
+
+  /**
+   * Opens a spool using the default segment size, creating it if it does not exist.
+   *
+   * @param directory The directory holding the spool.
+   * @throws IOException thrown when the spool can not be opened
+   */
+  public ELPSpool(Path directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens a spool, creating it if it does not exist.
+   *
+   * @param directory   The directory holding the spool.
+   * @param segmentSize The size of new segments in bytes, which also bounds the size of records.
+   *                    Existing segments keep their size.
+   * @throws IOException thrown when the spool can not be opened
+   */
+  public ELPSpool(Path directory, int segmentSize) throws IOException {
+    Validate.isTrue(segmentSize > HEADER_SIZE, "Segment size must be larger than %d bytes.",
+        HEADER_SIZE);
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory);
+
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(SEGMENT_SUFFIX)) {
+          long start = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+          segments.put(start, map(file, (int) Math.min(Files.size(file), Integer.MAX_VALUE)));
+        }
+      }
+    }
+    if (segments.isEmpty()) {
+      addSegment(0);
+    } else {
+      tailStart = segments.lastKey();
+      tail = segments.lastEntry().getValue();
+      tailOffset = recover(tail);
+    }
+
+    cursor = map(directory.resolve(CURSOR_FILE), CURSOR_SIZE);
+    committedPosition = readCursor();
+    readPosition = committedPosition;
+  }
+
+  private static MappedByteBuffer map(Path file, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private void addSegment(long start) throws IOException {
+    tail = map(directory.resolve(String.format("%020d%s", start, SEGMENT_SUFFIX)), segmentSize);
+    tailStart = start;
+    tailOffset = 0;
+    segments.put(start, tail);
+  }
+
+  /**
+   * Finds the end of the valid records of a segment, truncating the segment there.
+   *
+   * @return The offset right after the last valid record.
+   */
+  private int recover(MappedByteBuffer segment) {
+    int offset = 0;
+    int length;
+    while ((length = recordLength(segment, offset)) > 0) {
+      offset += HEADER_SIZE + length;
+    }
+    if (length < 0) {
+      log.warn("Truncating corrupt spool segment at offset {}.", offset);
+      segment.putInt(offset, 0);
+    }
+
+    return offset;
+  }
+
+  /**
+   * Returns the length of the record at an offset of a segment, 0 if the segment ends there, or
+   * -1 if the record is incomplete or fails its checksum.
+   */
+  private int recordLength(MappedByteBuffer segment, int offset) {
+    if (offset > segment.capacity() - HEADER_SIZE) {
+      return 0;
+    }
+    int length = segment.getInt(offset);
+    if (length == 0) {
+      return 0;
+    }
+    if (length < 0 || length > segment.capacity() - offset - HEADER_SIZE) {
+      return -1;
+    }
+    crc.reset();
+    crc.update(segment.slice(offset + HEADER_SIZE, length));
+
+    return (int) crc.getValue() == segment.getInt(offset + 4) ? length : -1;
+  }
+
+  /**
+   * Reads the persisted consumer cursor, falling back to the start of the first segment if the
+   * cursor is missing, corrupt or points outside the spool.
+   */
+  private long readCursor() {
+    long position = cursor.getLong(0);
+    crc.reset();
+    crc.update(cursor.slice(0, Long.BYTES));
+    if ((int) crc.getValue() != cursor.getInt(Long.BYTES) || position < segments.firstKey()
+        || position > tailStart + tailOffset) {
+      return segments.firstKey();
+    }
+
+    return position;
+  }
+
+  /**
+   * Appends a line.
+   *
+   * @param line The line to append.
+   * @return The position of the appended record.
+   * @throws IOException thrown when a new segment can not be started
+   */
+  public synchronized long append(CharSequence line) throws IOException {
+    Validate.isTrue(!line.isEmpty(), "Can not append an empty line.");
+    CharBuffer chars = CharBuffer.wrap(line);
+    for (;;) {
+      if (tailOffset > tail.capacity() - HEADER_SIZE) {
+        roll();
+      }
+      tail.limit(tail.capacity()).position(tailOffset + HEADER_SIZE);
+      encoder.reset();
+      CoderResult result = encoder.encode(chars, tail, true);
+      if (!result.isOverflow()) {
+        result = encoder.flush(tail);
+      }
+      if (!result.isOverflow()) {
+        return commitRecord(tail.position() - tailOffset - HEADER_SIZE);
+      }
+      checkFitsInSegment(utf8Length(line));
+      roll();
+      chars.rewind();
+    }
+  }
+
+  /**
+   * Appends a line that is already UTF-8 encoded.
+   *
+   * @param bytes  The bytes holding the line.
+   * @param offset The offset of the first byte of the line.
+   * @param length The number of bytes of the line.
+   * @return The position of the appended record.
+   * @throws IOException thrown when a new segment can not be started
+   */
+  public synchronized long append(byte[] bytes, int offset, int length) throws IOException {
+    Validate.isTrue(length > 0, "Can not append an empty line.");
+    if (length > tail.capacity() - tailOffset - HEADER_SIZE) {
+      checkFitsInSegment(length);
+      roll();
+    }
+    tail.put(tailOffset + HEADER_SIZE, bytes, offset, length);
+
+    return commitRecord(length);
+  }
+
+  /**
+   * Fails if a record of the given length would not fit in a new segment either, so that no
+   * segment is started in vain.
+   */
+  private void checkFitsInSegment(int length) {
+    if (length > segmentSize - HEADER_SIZE) {
+      throw new QLimitException("Line of {} bytes does not fit in spool segments of {} bytes.",
+          length, segmentSize);
+    }
+  }
+
+  /**
+   * Returns the length of a line once UTF-8 encoded, with unpaired surrogates encoded as the
+   * single byte replacing them.
+   */
+  private static int utf8Length(CharSequence line) {
+    int length = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < line.length()
+          && Character.isLowSurrogate(line.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+
+    return length;
+  }
+
+  /**
+   * Completes the record being appended, writing its length last so that readers never see it
+   * partially written.
+   */
+  private long commitRecord(int length) {
+    crc.reset();
+    crc.update(tail.slice(tailOffset + HEADER_SIZE, length));
+    tail.putInt(tailOffset + 4, (int) crc.getValue());
+    tail.putInt(tailOffset, length);
+    long position = tailStart + tailOffset;
+    tailOffset += HEADER_SIZE + length;
+
+    return position;
+  }
+
+  /**
+   * Starts a new segment, making the current one durable. Callers check that the record being
+   * appended fits in the new segment first, see {@link #checkFitsInSegment(int)}.
+   */
+  private void roll() throws IOException {
+    if (tailOffset <= tail.capacity() - HEADER_SIZE) {
+      tail.putInt(tailOffset, 0);
+    }
+    tail.force();
+    addSegment(tailStart + tail.capacity());
+  }
+
+  /**
+   * Reads the next line after the consumer cursor.
+   *
+   * @return The line, or null if all lines have been read. The line is a view over the spool,
+   * valid until the next call.
+   */
+  public synchronized Utf8CharSequence next() {
+    for (;;) {
+      if (readPosition == tailStart + tailOffset) {
+        return null;
+      }
+      Entry<Long, MappedByteBuffer> segment = segments.floorEntry(readPosition);
+      int offset = (int) (readPosition - segment.getKey());
+      int length = recordLength(segment.getValue(), offset);
+      if (length > 0) {
+        readPosition += HEADER_SIZE + length;
+        return line.wrap(segment.getValue(), offset + HEADER_SIZE, length);
+      }
+      Long nextStart = segments.higherKey(segment.getKey());
+      if (nextStart == null) {
+        return null;
+      }
+      if (length < 0) {
+        log.warn("Skipping corrupt spool segment {} after offset {}.", segment.getKey(), offset);
+      }
+      readPosition = nextStart;
+    }
+  }
+
+  /**
+   * Persists the consumer cursor at the position after the last line read, deleting the segments
+   * that have been fully consumed.
+   *
+   * @throws IOException thrown when a segment can not be deleted
+   */
+  public synchronized void commit() throws IOException {
+    cursor.putLong(0, readPosition);
+    crc.reset();
+    crc.update(cursor.slice(0, Long.BYTES));
+    cursor.putInt(Long.BYTES, (int) crc.getValue());
+    committedPosition = readPosition;
+
+    Iterator<Long> starts = segments.headMap(segments.floorKey(readPosition)).keySet().iterator();
+    while (starts.hasNext()) {
+      Files.delete(directory.resolve(String.format("%020d%s", starts.next(), SEGMENT_SUFFIX)));
+      starts.remove();
+    }
+  }
+
+  /**
+   * Goes back to the persisted consumer cursor, so that the lines read since the last
+   * {@link #commit()} are read again.
+   */
+  public synchronized void rewind() {
+    readPosition = committedPosition;
+  }
+
+  /**
+   * Returns whether all lines have been read.
+   */
+  public synchronized boolean isEmpty() {
+    return readPosition == tailStart + tailOffset;
+  }
+
+  /**
+   * Makes the appended lines and the persisted consumer cursor durable.
+   */
+  public synchronized void force() {
+    tail.force();
+    cursor.force();
+  }
+
+  @Override
+  public synchronized void close() {
+    force();
+  }
+}
@@ -0,0 +1,214 @@
+package esthesis.common.avro;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Validation and conversion of the ISO-8601 UTC timestamps used by the esthesis line protocol,
+ * without going through {@link java.time.format.DateTimeFormatter}.
+ * <p>
+ * The fixed layout virtually all devices send, {@code yyyy-MM-ddTHH:mm:ss[.f{1,9}]Z}, is decoded
+ * directly from its characters. Any other layout (lowercase separators, offsets, leap seconds,
+ * years beyond four digits) is delegated to {@link Instant#parse(CharSequence)}, so the accepted
+ * timestamps, and the instants they represent, are always the same as with
+ * {@link Instant#parse(CharSequence)}.
+ */
+public final class ELPTimestamps {
+
+  // Returned by the conversion methods when the timestamp is not valid.
+  public static final long INVALID = Long.MIN_VALUE;
+
+  // The number of days from 0000-01-01 to 1970-01-01.
+  private static final long DAYS_0000_TO_1970 = 719_528L;
+  private static final int SECONDS_PER_DAY = 86_400;
+  // The length of the fixed layout without a fraction, and with the longest fraction.
+  private static final int MIN_LENGTH = 20;
+  private static final int MAX_LENGTH = 30;
+
+  private ELPTimestamps() {
+  }
+
+  /**
+   * Checks whether a timestamp is a valid ISO-8601 instant.
+   *
+   * @param text The character sequence holding the timestamp.
+   * @param from The start of the timestamp, inclusive.
+   * @param to   The end of the timestamp, exclusive.
+   */
+  public static boolean isValid(CharSequence text, int from, int to) {
+    return fastEpochSecond(text, from, to) != INVALID || slowParse(text, from, to) != null;
+  }
+
+  /**
+   * Converts a timestamp to an instant.
+   *
+   * @param text The character sequence holding the timestamp.
+   * @param from The start of the timestamp, inclusive.
+   * @param to   The end of the timestamp, exclusive.
+   * @return The instant, or null if the timestamp is not valid.
+   */
+  public static Instant toInstant(CharSequence text, int from, int to) {
+    long seconds = fastEpochSecond(text, from, to);
+    if (seconds != INVALID) {
+      return Instant.ofEpochSecond(seconds, fastNanos(text, from, to));
+    }
+    return slowParse(text, from, to);
+  }
+
+  /**
+   * Converts a timestamp to milliseconds since the epoch.
+   *
+   * @param text The character sequence holding the timestamp.
+   * @param from The start of the timestamp, inclusive.
+   * @param to   The end of the timestamp, exclusive.
+   * @return The milliseconds since the epoch, or {@link #INVALID} if the timestamp is not valid or
+   * does not fit in a long.
+   */
+  public static long toEpochMilli(CharSequence text, int from, int to) {
+    long seconds = fastEpochSecond(text, from, to);
+    if (seconds != INVALID) {
+      return seconds * 1_000 + fastNanos(text, from, to) / 1_000_000;
+    }
+
+    Instant instant = slowParse(text, from, to);
+    try {
+      return instant != null ? instant.toEpochMilli() : INVALID;
+    } catch (ArithmeticException e) {
+      return INVALID;
+    }
+  }
+
+  /**
+   * Converts a timestamp to nanoseconds since the epoch. Only instants between the years 1677 and
+   * 2262 can be expressed in nanoseconds.
+   *
+   * @param text The character sequence holding the timestamp.
+   * @param from The start of the timestamp, inclusive.
+   * @param to   The end of the timestamp, exclusive.
+   * @return The nanoseconds since the epoch, or {@link #INVALID} if the timestamp is not valid or
+   * does not fit in a long.
+   */
+  public static long toEpochNano(CharSequence text, int from, int to) {
+    long seconds = fastEpochSecond(text, from, to);
+    long nanos;
+    if (seconds != INVALID) {
+      nanos = fastNanos(text, from, to);
+    } else {
+      Instant instant = slowParse(text, from, to);
+      if (instant == null) {
+        return INVALID;
+      }
+      seconds = instant.getEpochSecond();
+      nanos = instant.getNano();
+    }
+
+    try {
+      return Math.addExact(Math.multiplyExact(seconds, 1_000_000_000L), nanos);
+    } catch (ArithmeticException e) {
+      return INVALID;
+    }
+  }
+
+  /**
+   * Decodes the seconds since the epoch of a timestamp in the fixed layout.
+   *
+   * @return The seconds since the epoch, or {@link #INVALID} if the timestamp is not in the fixed
+   * layout or is not valid.
+   */
+  private static long fastEpochSecond(CharSequence text, int from, int to) {
+    int length = to - from;
+    if (length < MIN_LENGTH || length > MAX_LENGTH || length == MIN_LENGTH + 1
+        || text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-'
+        || text.charAt(from + 10) != 'T' || text.charAt(from + 13) != ':'
+        || text.charAt(from + 16) != ':' || text.charAt(to - 1) != 'Z') {
+      return INVALID;
+    }
+    if (length > MIN_LENGTH) {
+      if (text.charAt(from + 19) != '.' || digits(text, from + 20, to - 1) < 0) {
+        return INVALID;
+      }
+    }
+
+    int year = digits(text, from, from + 4);
+    int month = digits(text, from + 5, from + 7);
+    int day = digits(text, from + 8, from + 10);
+    int hour = digits(text, from + 11, from + 13);
+    int minute = digits(text, from + 14, from + 16);
+    int second = digits(text, from + 17, from + 19);
+    // Negative values denote non-digits; leap seconds are left to Instant.parse.
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return INVALID;
+    }
+
+    return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3_600L + minute * 60L + second;
+  }
+
+  /**
+   * Decodes the nanoseconds of the fraction of a timestamp already validated by
+   * {@link #fastEpochSecond(CharSequence, int, int)}.
+   */
+  private static int fastNanos(CharSequence text, int from, int to) {
+    int nanos = 0;
+    int i = from + MIN_LENGTH;
+    for (; i < to - 1; i++) {
+      nanos = nanos * 10 + (text.charAt(i) - '0');
+    }
+    for (; i < from + MAX_LENGTH - 1; i++) {
+      nanos *= 10;
+    }
+    return nanos;
+  }
+
+  /**
+   * Decodes a run of ASCII digits, returning -1 if any character is not a digit.
+   */
+  private static int digits(CharSequence text, int from, int to) {
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> isLeapYear(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  /**
+   * The days since the epoch of a date with a non-negative year, as in
+   * {@link java.time.LocalDate#toEpochDay()}.
+   */
+  private static long epochDay(int year, int month, int day) {
+    long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+    total += (367 * month - 362) / 12;
+    total += day - 1;
+    if (month > 2) {
+      total--;
+      if (!isLeapYear(year)) {
+        total--;
+      }
+    }
+    return total - DAYS_0000_TO_1970;
+  }
+
+  private static Instant slowParse(CharSequence text, int from, int to) {
+    try {
+      return Instant.parse(text.subSequence(from, to));
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
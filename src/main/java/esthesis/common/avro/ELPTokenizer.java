@@ -0,0 +1,234 @@
+package esthesis.common.avro;
+
+import esthesis.common.data.HintedValue;
+import java.util.Arrays;
+
+/**
+ * A single-pass, regex-free tokenizer for esthesis line protocol (eLP) lines. The tokenizer does
+ * not create any substrings, it only records the boundaries of the category, the measurement
+ * names and values, and the optional timestamp, so that callers can materialise only the parts
+ * they need.
+ * <p>
+ * The tokenizer is stateful and reusable, but not thread-safe; a single instance should be used
+ * by a single thread at a time.
+ */
+final class ELPTokenizer {
+
+  // The number of slots each measurement occupies in the measurement boundaries array.
+  private static final int MEASUREMENT_SLOTS = 4;
+
+  private int categoryStart;
+  private int categoryEnd;
+  private int measurementCount;
+  // Name start, name end, value start, value end for each measurement.
+  private int[] measurements = new int[MEASUREMENT_SLOTS * 8];
+  private int timestampStart;
+  private int timestampEnd;
+  private ELPParseError error;
+  private int errorOffset;
+  // The holder the values of the line are resolved into, see getHintedValue().
+  private final HintedValue hintedValue = new HintedValue();
+
+  /**
+   * Tokenizes a single eLP line. See {@link AvroUtils#parsePayload(String)} for the format.
+   *
+   * @param line The line to tokenize.
+   * @return True if the line is well-formed, false otherwise, in which case {@link #getError()}
+   * and {@link #getErrorOffset()} describe the problem.
+   */
+  boolean tokenize(CharSequence line) {
+    return tokenize(line, 0, line.length());
+  }
+
+  /**
+   * Tokenizes a single eLP line held in a region of a larger character sequence, e.g. a line of a
+   * multi-line payload. All boundaries recorded by the tokenizer are absolute offsets within the
+   * given sequence.
+   *
+   * @param line The character sequence holding the line.
+   * @param from The start of the line, inclusive.
+   * @param to   The end of the line, exclusive.
+   * @return True if the line is well-formed, false otherwise.
+   */
+  @SuppressWarnings("java:S3776")
+  boolean tokenize(CharSequence line, int from, int to) {
+    reset();
+
+    // Skip leading spaces.
+    int i = skipSpaces(line, from, to);
+    if (i == to) {
+      return fail(ELPParseError.EMPTY_LINE, i);
+    }
+    if (line.charAt(i) == '#') {
+      return fail(ELPParseError.COMMENT, i);
+    }
+
+    // Category.
+    categoryStart = i;
+    while (i < to && line.charAt(i) != ' ') {
+      i++;
+    }
+    categoryEnd = i;
+    i = skipSpaces(line, i, to);
+    if (i == to) {
+      return fail(ELPParseError.MISSING_MEASUREMENTS, i);
+    }
+
+    // Measurements, separated by commas and terminated by a space or the end of the line.
+    boolean moreMeasurements = true;
+    while (moreMeasurements) {
+      int nameStart = i;
+      while (i < to) {
+        char c = line.charAt(i);
+        if (c == '=' || c == ',' || c == ' ') {
+          break;
+        }
+        i++;
+      }
+      if (i == to || line.charAt(i) != '=' || i == nameStart) {
+        return fail(ELPParseError.INVALID_MEASUREMENT, nameStart);
+      }
+      int nameEnd = i++;
+
+      int valueStart = i;
+      boolean quoted = false;
+      while (i < to) {
+        char c = line.charAt(i);
+        if (c == '\'') {
+          quoted = !quoted;
+        } else if (!quoted && (c == ',' || c == ' ')) {
+          break;
+        } else if (!quoted && c == '=') {
+          return fail(ELPParseError.INVALID_MEASUREMENT, i);
+        }
+        i++;
+      }
+      if (quoted) {
+        return fail(ELPParseError.UNTERMINATED_QUOTE, valueStart);
+      }
+      if (i == valueStart) {
+        return fail(ELPParseError.INVALID_MEASUREMENT, nameStart);
+      }
+      addMeasurement(nameStart, nameEnd, valueStart, i);
+
+      if (i < to && line.charAt(i) == ',') {
+        i++;
+      } else {
+        moreMeasurements = false;
+      }
+    }
+
+    // Optional timestamp.
+    i = skipSpaces(line, i, to);
+    if (i < to) {
+      timestampStart = i;
+      while (i < to && line.charAt(i) != ' ') {
+        i++;
+      }
+      timestampEnd = i;
+      i = skipSpaces(line, i, to);
+      if (i < to) {
+        return fail(ELPParseError.UNEXPECTED_TOKEN, i);
+      }
+    }
+
+    return true;
+  }
+
+  private static int skipSpaces(CharSequence line, int i, int len) {
+    while (i < len && line.charAt(i) == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  private void reset() {
+    categoryStart = categoryEnd = 0;
+    measurementCount = 0;
+    timestampStart = timestampEnd = -1;
+    error = null;
+    errorOffset = -1;
+  }
+
+  /**
+   * Marks the last tokenized line as rejected, for checks performed after tokenization (e.g.
+   * timestamp validation).
+   *
+   * @param error  The reason of the rejection.
+   * @param offset The offset at which the problem was found.
+   * @return Always false.
+   */
+  boolean fail(ELPParseError error, int offset) {
+    this.error = error;
+    this.errorOffset = offset;
+    return false;
+  }
+
+  private void addMeasurement(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+    int base = measurementCount * MEASUREMENT_SLOTS;
+    if (base + MEASUREMENT_SLOTS > measurements.length) {
+      measurements = Arrays.copyOf(measurements, measurements.length * 2);
+    }
+    measurements[base] = nameStart;
+    measurements[base + 1] = nameEnd;
+    measurements[base + 2] = valueStart;
+    measurements[base + 3] = valueEnd;
+    measurementCount++;
+  }
+
+  int getCategoryStart() {
+    return categoryStart;
+  }
+
+  int getCategoryEnd() {
+    return categoryEnd;
+  }
+
+  int getMeasurementCount() {
+    return measurementCount;
+  }
+
+  int getNameStart(int measurement) {
+    return measurements[measurement * MEASUREMENT_SLOTS];
+  }
+
+  int getNameEnd(int measurement) {
+    return measurements[measurement * MEASUREMENT_SLOTS + 1];
+  }
+
+  int getValueStart(int measurement) {
+    return measurements[measurement * MEASUREMENT_SLOTS + 2];
+  }
+
+  int getValueEnd(int measurement) {
+    return measurements[measurement * MEASUREMENT_SLOTS + 3];
+  }
+
+  /**
+   * Returns the holder to resolve values into while parsing with this tokenizer, so that values
+   * are resolved without allocating. Each resolution replaces the previously resolved value.
+   */
+  HintedValue getHintedValue() {
+    return hintedValue;
+  }
+
+  boolean hasTimestamp() {
+    return timestampStart >= 0;
+  }
+
+  int getTimestampStart() {
+    return timestampStart;
+  }
+
+  int getTimestampEnd() {
+    return timestampEnd;
+  }
+
+  ELPParseError getError() {
+    return error;
+  }
+
+  int getErrorOffset() {
+    return errorOffset;
+  }
+}
@@ -0,0 +1,246 @@
+package esthesis.common.avro;
+
+import esthesis.common.avro.ELPEntry.ELPMeasurement;
+import esthesis.common.exception.QMismatchException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes {@link ELPEntry} and {@link PayloadData} objects as esthesis line protocol lines, in the
+ * format parsed by {@link AvroUtils#parsePayload(String)}, directly into a caller-supplied
+ * {@link Appendable} (e.g. a {@link StringBuilder}, a {@link java.nio.CharBuffer} or a
+ * {@link java.io.Writer}) or a UTF-8 encoded {@link ByteBuffer}, without creating intermediate
+ * Strings. Lines are written without a line terminator.
+ * <p>
+ * The values of a {@link PayloadData} are written so that they parse back to the same text and
+ * type: strings are quoted and other values get the type hint of their type, e.g. {@code 'text'},
+ * {@code 10i} or {@code 1.5f}. The same applies to the values of an {@link ELPEntry} given with an
+ * explicit type; other values are written as is, including any quotes and type hints, unless they
+ * contain spaces, commas or equal signs outside quotes, in which case they are quoted as strings.
+ * Categories, names and values that can not be represented in the line protocol, e.g. names
+ * containing spaces, are rejected with a {@link QMismatchException}.
+ * <p>
+ * Writers are reusable, but not thread-safe; a single instance should be used by a single thread
+ * at a time.
+ */
+public final class ELPWriter {
+
+  // The type hints of the value types, indexed by their ordinal; null for types without a hint.
+  private static final String[] HINTS = new String[ValueTypeEnum.values().length];
+
+  static {
+    HINTS[ValueTypeEnum.BYTE.ordinal()] = "b";
+    HINTS[ValueTypeEnum.SHORT.ordinal()] = "s";
+    HINTS[ValueTypeEnum.INTEGER.ordinal()] = "i";
+    HINTS[ValueTypeEnum.LONG.ordinal()] = "l";
+    HINTS[ValueTypeEnum.BIG_INTEGER.ordinal()] = "bi";
+    HINTS[ValueTypeEnum.FLOAT.ordinal()] = "f";
+    HINTS[ValueTypeEnum.DOUBLE.ordinal()] = "d";
+    HINTS[ValueTypeEnum.BIG_DECIMAL.ordinal()] = "bd";
+  }
+
+  // The results of scanning a value for the structural characters of the line protocol.
+  private static final int ENDS_UNQUOTED = 0;
+  private static final int ENDS_QUOTED = 1;
+  private static final int INVALID = -1;
+
+  private final Utf8ByteBufferAppendable byteBufferOut = new Utf8ByteBufferAppendable();
+
+  /**
+   * Writes an entry.
+   *
+   * @param entry The entry to write.
+   * @param out   The destination to write the line to.
+   * @throws IOException thrown when the destination can not be written to
+   */
+  public void write(ELPEntry entry, Appendable out) throws IOException {
+    List<ELPMeasurement> measurements = entry.getMeasurements();
+    if (measurements == null || measurements.isEmpty()) {
+      throw new QMismatchException("Entry of category '{}' has no measurements.",
+          entry.getCategory());
+    }
+    writeCategory(entry.getCategory(), out);
+    for (int i = 0; i < measurements.size(); i++) {
+      ELPMeasurement measurement = measurements.get(i);
+      writeName(i, measurement.getName(), out);
+      String value = measurement.getValue();
+      if (value == null) {
+        throw new QMismatchException("Measurement '{}' has no value.", measurement.getName());
+      }
+      if (measurement.getValueType() != null) {
+        writeValue(measurement.getName(), value, measurement.getValueType(), out);
+      } else if (scan(value, false) == ENDS_UNQUOTED && !value.isEmpty()) {
+        out.append(value);
+      } else {
+        writeQuoted(measurement.getName(), value, out);
+      }
+    }
+    writeTimestamp(entry.getDate(), out);
+  }
+
+  /**
+   * Writes a payload.
+   *
+   * @param payload The payload to write.
+   * @param out     The destination to write the line to.
+   * @throws IOException thrown when the destination can not be written to
+   */
+  public void write(PayloadData payload, Appendable out) throws IOException {
+    List<ValueData> values = payload.getValues();
+    if (values == null || values.isEmpty()) {
+      throw new QMismatchException("Payload of category '{}' has no values.",
+          payload.getCategory());
+    }
+    writeCategory(payload.getCategory(), out);
+    for (int i = 0; i < values.size(); i++) {
+      ValueData valueData = values.get(i);
+      writeName(i, valueData.getName(), out);
+      writeValue(valueData.getName(), valueData.getValue(), valueData.getValueType(), out);
+    }
+    if (payload.getTimestampMicros() != null) {
+      writeTimestamp(payload.getTimestampMicros(), out);
+    } else if (payload.getTimestamp() != null) {
+      out.append(' ').append(payload.getTimestamp());
+    }
+  }
+
+  /**
+   * Writes an entry into a buffer as UTF-8, starting at its current position. On return, the
+   * position of the buffer is advanced past the line. If the line does not fit in the remaining
+   * bytes of the buffer, the position of the buffer is left unchanged.
+   *
+   * @param entry The entry to write.
+   * @param out   The buffer to write the line into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the line does not fit in the buffer.
+   */
+  public int write(ELPEntry entry, ByteBuffer out) {
+    int start = out.position();
+    try {
+      write(entry, byteBufferOut.wrap(out));
+      byteBufferOut.finish();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      out.position(start);
+      throw e;
+    }
+
+    return out.position() - start;
+  }
+
+  /**
+   * Writes a payload into a buffer as UTF-8, see {@link #write(ELPEntry, ByteBuffer)}.
+   *
+   * @param payload The payload to write.
+   * @param out     The buffer to write the line into.
+   * @return The number of bytes written.
+   * @throws BufferOverflowException thrown when the line does not fit in the buffer.
+   */
+  public int write(PayloadData payload, ByteBuffer out) {
+    int start = out.position();
+    try {
+      write(payload, byteBufferOut.wrap(out));
+      byteBufferOut.finish();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      out.position(start);
+      throw e;
+    }
+
+    return out.position() - start;
+  }
+
+  private static void writeCategory(String category, Appendable out) throws IOException {
+    if (category == null || category.isEmpty() || category.charAt(0) == '#'
+        || category.indexOf(' ') >= 0) {
+      throw new QMismatchException("Invalid category '{}'.", category);
+    }
+    out.append(category).append(' ');
+  }
+
+  private static void writeName(int index, String name, Appendable out) throws IOException {
+    if (name == null || name.isEmpty() || name.indexOf(' ') >= 0 || name.indexOf(',') >= 0
+        || name.indexOf('=') >= 0) {
+      throw new QMismatchException("Invalid measurement name '{}'.", name);
+    }
+    if (index > 0) {
+      out.append(',');
+    }
+    out.append(name).append('=');
+  }
+
+  private static void writeValue(String name, String value, ValueTypeEnum valueType,
+      Appendable out) throws IOException {
+    if (value == null) {
+      throw new QMismatchException("Measurement '{}' has no value.", name);
+    }
+    switch (valueType) {
+      case STRING -> writeQuoted(name, value, out);
+      case BOOLEAN -> {
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+          throw new QMismatchException("Invalid boolean value '{}' of measurement '{}'.", value,
+              name);
+        }
+        out.append(value);
+      }
+      case UNKNOWN -> {
+        // Values of unknown type are kept as they appear in the line, with any quotes and hints.
+        if (value.isEmpty() || scan(value, false) != ENDS_UNQUOTED) {
+          throw new QMismatchException("Invalid value '{}' of measurement '{}'.", value, name);
+        }
+        out.append(value);
+      }
+      default -> {
+        if (value.isEmpty() || value.indexOf('\'') >= 0 || scan(value, false) != ENDS_UNQUOTED) {
+          throw new QMismatchException("Invalid {} value '{}' of measurement '{}'.", valueType,
+              value, name);
+        }
+        out.append(value).append(HINTS[valueType.ordinal()]);
+      }
+    }
+  }
+
+  private static void writeQuoted(String name, String value, Appendable out) throws IOException {
+    // The quotes around the value are matched by the tokenizer as any other quotes, so quotes in
+    // the value must pair up so that no separator ends up outside quotes.
+    if (scan(value, true) != ENDS_QUOTED) {
+      throw new QMismatchException("Value '{}' of measurement '{}' can not be quoted.", value,
+          name);
+    }
+    out.append('\'').append(value).append('\'');
+  }
+
+  private static void writeTimestamp(Instant timestamp, Appendable out) throws IOException {
+    if (timestamp != null) {
+      out.append(' ');
+      DateTimeFormatter.ISO_INSTANT.formatTo(timestamp, out);
+    }
+  }
+
+  /**
+   * Scans a value the way {@link ELPTokenizer} does, returning whether the value ends inside or
+   * outside quotes, or {@link #INVALID} if it contains a separator outside quotes.
+   *
+   * @param value  The value to scan.
+   * @param quoted Whether the value starts inside quotes.
+   */
+  private static int scan(String value, boolean quoted) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && (c == ' ' || c == ',' || c == '=')) {
+        return INVALID;
+      }
+    }
+
+    return quoted ? ENDS_QUOTED : ENDS_UNQUOTED;
+  }
+}
@@ -0,0 +1,143 @@
+package esthesis.common.avro;
+
+import esthesis.common.util.IdGenerator;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups {@link EsthesisDataMessage}s into columnar {@link EsthesisDataBatch}es, see
+ * {@code esthesis-data-batch.avsc}. Hardware ids, message types, seen by texts, channels,
+ * categories and value names are stored once per batch in its dictionary. Values are stored in
+ * their native type when their text can be restored exactly from it, so that messages rebuilt
+ * with {@link EsthesisDataBatchIterator} carry the same values as the original ones. Timestamps
+ * are stored in microseconds since the epoch, taken from the epoch-based or the ISO-8601 fields
+ * of the messages, see {@link MessageTimestamps}.
+ * <p>
+ * A builder can be reused: each call to {@link #build()} returns the messages added since the
+ * previous call. Builders are not thread-safe.
+ */
+public final class EsthesisDataBatchBuilder {
+
+  private final Map<String, Integer> dictionaryIndices = new HashMap<>();
+  private List<String> dictionary;
+  private List<String> messageIds;
+  private List<String> correlationIds;
+  private List<Integer> hardwareIds;
+  private List<Integer> seenBy;
+  private List<Long> seenAt;
+  private List<Integer> types;
+  private List<Integer> channels;
+  private List<Integer> categories;
+  private List<Long> timestamps;
+  private List<Integer> valueCounts;
+  private List<Integer> names;
+  private List<Integer> valueTypes;
+  private List<Object> values;
+
+  public EsthesisDataBatchBuilder() {
+    reset();
+  }
+
+  /**
+   * Adds a message to the batch.
+   *
+   * @param message The message to add.
+   * @return This builder.
+   */
+  public EsthesisDataBatchBuilder add(EsthesisDataMessage message) {
+    PayloadData payload = message.getPayload();
+    messageIds.add(message.getId());
+    correlationIds.add(message.getCorrelationId());
+    hardwareIds.add(indexOf(message.getHardwareId()));
+    seenBy.add(indexOf(message.getSeenBy()));
+    seenAt.add(toEpochMicros(MessageTimestamps.getSeenAt(message)));
+    types.add(indexOf(message.getType().name()));
+    channels.add(indexOf(message.getChannel()));
+    categories.add(indexOf(payload.getCategory()));
+    timestamps.add(toEpochMicros(MessageTimestamps.getTimestamp(payload)));
+    valueCounts.add(payload.getValues().size());
+    for (ValueData valueData : payload.getValues()) {
+      names.add(indexOf(valueData.getName()));
+      valueTypes.add(valueData.getValueType().ordinal());
+      values.add(toNative(valueData.getValue(), valueData.getValueType()));
+    }
+
+    return this;
+  }
+
+  /**
+   * Returns the number of messages added since the last batch was built.
+   */
+  public int getMessageCount() {
+    return messageIds.size();
+  }
+
+  /**
+   * Returns the number of values added since the last batch was built.
+   */
+  public int getValueCount() {
+    return values.size();
+  }
+
+  /**
+   * Builds a batch of the messages added since the last batch was built, and resets the builder.
+   */
+  public EsthesisDataBatch build() {
+    EsthesisDataBatch batch = new EsthesisDataBatch(IdGenerator.uuid7().toString(), dictionary,
+        messageIds, correlationIds, hardwareIds, seenBy, seenAt, types, channels, categories,
+        timestamps, valueCounts, names, valueTypes, values);
+    reset();
+    return batch;
+  }
+
+  private void reset() {
+    dictionaryIndices.clear();
+    dictionary = new ArrayList<>();
+    messageIds = new ArrayList<>();
+    correlationIds = new ArrayList<>();
+    hardwareIds = new ArrayList<>();
+    seenBy = new ArrayList<>();
+    seenAt = new ArrayList<>();
+    types = new ArrayList<>();
+    channels = new ArrayList<>();
+    categories = new ArrayList<>();
+    timestamps = new ArrayList<>();
+    valueCounts = new ArrayList<>();
+    names = new ArrayList<>();
+    valueTypes = new ArrayList<>();
+    values = new ArrayList<>();
+  }
+
+  private int indexOf(String text) {
+    return dictionaryIndices.computeIfAbsent(text, t -> {
+      dictionary.add(t);
+      return dictionary.size() - 1;
+    });
+  }
+
+  private static Long toEpochMicros(Instant instant) {
+    return instant != null ? MessageTimestamps.toEpochMicros(instant) : null;
+  }
+
+  /**
+   * Converts the text of a value to its native type, if the text can be restored exactly from it
+   * by {@link EsthesisDataBatchIterator}.
+   */
+  private static Object toNative(String text, ValueTypeEnum valueType) {
+    try {
+      Object value = switch (valueType) {
+        case BYTE, SHORT, INTEGER, LONG, BIG_INTEGER -> Long.parseLong(text);
+        case FLOAT -> (double) Float.parseFloat(text);
+        case DOUBLE -> Double.parseDouble(text);
+        case BOOLEAN -> text.equals("true") || text.equals("false") ? Boolean.valueOf(text) : text;
+        default -> text;
+      };
+      return text.equals(EsthesisDataBatchIterator.toText(value, valueType)) ? value : text;
+    } catch (NumberFormatException e) {
+      return text;
+    }
+  }
+}
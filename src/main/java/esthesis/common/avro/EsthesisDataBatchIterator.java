@@ -0,0 +1,75 @@
+package esthesis.common.avro;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Rebuilds the individual {@link EsthesisDataMessage}s of a columnar {@link EsthesisDataBatch},
+ * in the order they were added to the batch, see {@link EsthesisDataBatchBuilder}. Timestamps are
+ * restored in the epoch-based fields of the messages only; use {@link MessageTimestamps} to read
+ * them.
+ */
+public final class EsthesisDataBatchIterator implements Iterator<EsthesisDataMessage> {
+
+  // The value types, indexed by their ordinal.
+  private static final ValueTypeEnum[] VALUE_TYPES = ValueTypeEnum.values();
+
+  private final EsthesisDataBatch batch;
+  private int message;
+  private int value;
+
+  public EsthesisDataBatchIterator(EsthesisDataBatch batch) {
+    this.batch = batch;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return message < batch.getMessageIds().size();
+  }
+
+  @Override
+  public EsthesisDataMessage next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    List<String> dictionary = batch.getDictionary();
+    int valueCount = batch.getValueCounts().get(message);
+    List<ValueData> values = new ArrayList<>(valueCount);
+    for (int end = value + valueCount; value < end; value++) {
+      ValueTypeEnum valueType = VALUE_TYPES[batch.getValueTypes().get(value)];
+      values.add(new ValueData(dictionary.get(batch.getNames().get(value)),
+          toText(batch.getValues().get(value), valueType), valueType));
+    }
+    PayloadData payload = new PayloadData(dictionary.get(batch.getCategories().get(message)),
+        null, values, ofEpochMicros(batch.getTimestamps().get(message)));
+
+    EsthesisDataMessage dataMessage = new EsthesisDataMessage(batch.getMessageIds().get(message),
+        batch.getCorrelationIds().get(message),
+        dictionary.get(batch.getHardwareIds().get(message)),
+        dictionary.get(batch.getSeenBy().get(message)), null,
+        MessageTypeEnum.valueOf(dictionary.get(batch.getTypes().get(message))),
+        dictionary.get(batch.getChannels().get(message)), payload,
+        ofEpochMicros(batch.getSeenAt().get(message)));
+    message++;
+
+    return dataMessage;
+  }
+
+  /**
+   * Renders a value stored in its native type as the text of a {@link ValueData}.
+   */
+  static String toText(Object value, ValueTypeEnum valueType) {
+    if (value instanceof Double d && valueType == ValueTypeEnum.FLOAT) {
+      return Float.toString(d.floatValue());
+    }
+    return value.toString();
+  }
+
+  private static Instant ofEpochMicros(Long micros) {
+    return micros != null ? MessageTimestamps.ofEpochMicros(micros) : null;
+  }
+}
@@ -0,0 +1,219 @@
+package esthesis.common.avro;
+
+import esthesis.common.exception.QProcessingException;
+import java.nio.ByteBuffer;
+
+/**
+ * A flyweight view over a binary encoded {@link EsthesisDataMessage}, giving access to its fields
+ * without decoding the message. This suits components that only route or filter messages, e.g. by
+ * hardware id, type, channel or payload category, which can then do so without allocating per
+ * message.
+ * <p>
+ * When a message is wrapped, only the fields preceding the values of its payload are located; the
+ * values are skipped without being decoded, and only when the length of the encoded message is
+ * requested. Text fields are returned as {@link ByteBufferCharSequence} views over the encoded
+ * bytes, which are only valid until the view is re-pointed to a different message. Like all
+ * {@link Utf8CharSequence}s, they expose each byte of the UTF-8 encoded text as a single char; use
+ * {@link Object#toString()} to decode them.
+ * <p>
+ * Views are mutable so that they can be re-pointed to a different message with
+ * {@link #wrap(ByteBuffer)} without allocating; they are not thread-safe.
+ */
+public final class EsthesisDataMessageView {
+
+  // The message types, indexed by their ordinal.
+  private static final MessageTypeEnum[] MESSAGE_TYPES = MessageTypeEnum.values();
+
+  private final ByteBufferCharSequence id = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence correlationId = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence hardwareId = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence seenBy = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence seenAt = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence channel = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence category = new ByteBufferCharSequence();
+  private final ByteBufferCharSequence timestamp = new ByteBufferCharSequence();
+
+  private ByteBuffer buffer;
+  // The index of the first byte of the message, and of the values of its payload.
+  private int start;
+  private int valuesStart;
+  // The index of the next byte to read.
+  private int position;
+  private boolean hasCorrelationId;
+  private boolean hasSeenAt;
+  private boolean hasTimestamp;
+  private MessageTypeEnum type;
+  // The length of the encoded message, or -1 if not yet known.
+  private int length;
+
+  /**
+   * Points this view to the message starting at the current position of a buffer. The position
+   * and limit of the buffer are not modified; use {@link #getEncodedLength()} to advance past the
+   * message.
+   *
+   * @param buffer The buffer holding the encoded message.
+   * @return This view.
+   */
+  public EsthesisDataMessageView wrap(ByteBuffer buffer) {
+    this.buffer = buffer;
+    start = buffer.position();
+    position = start;
+    length = -1;
+    try {
+      readString(id);
+      hasCorrelationId = readOptionalString(correlationId);
+      readString(hardwareId);
+      readString(seenBy);
+      hasSeenAt = readOptionalString(seenAt);
+      int ordinal = readInt();
+      if (ordinal < 0 || ordinal >= MESSAGE_TYPES.length) {
+        throw new QProcessingException("Invalid message type ordinal {}.", ordinal);
+      }
+      type = MESSAGE_TYPES[ordinal];
+      readString(channel);
+      readString(category);
+      hasTimestamp = readOptionalString(timestamp);
+      valuesStart = position;
+    } catch (IndexOutOfBoundsException e) {
+      throw new QProcessingException("Could not read message of type EsthesisDataMessage.", e);
+    }
+
+    return this;
+  }
+
+  public CharSequence getId() {
+    return id;
+  }
+
+  public CharSequence getCorrelationId() {
+    return hasCorrelationId ? correlationId : null;
+  }
+
+  public CharSequence getHardwareId() {
+    return hardwareId;
+  }
+
+  public CharSequence getSeenBy() {
+    return seenBy;
+  }
+
+  public CharSequence getSeenAt() {
+    return hasSeenAt ? seenAt : null;
+  }
+
+  public MessageTypeEnum getType() {
+    return type;
+  }
+
+  public CharSequence getChannel() {
+    return channel;
+  }
+
+  public CharSequence getCategory() {
+    return category;
+  }
+
+  public CharSequence getTimestamp() {
+    return hasTimestamp ? timestamp : null;
+  }
+
+  /**
+   * Returns the number of bytes of the encoded message, skipping over the values of its payload
+   * the first time it is requested.
+   */
+  public int getEncodedLength() {
+    if (length < 0) {
+      position = valuesStart;
+      try {
+        skipValues();
+        skipOptionalLong();
+        skipOptionalLong();
+      } catch (IndexOutOfBoundsException e) {
+        throw new QProcessingException("Could not read message of type EsthesisDataMessage.", e);
+      }
+      length = position - start;
+    }
+
+    return length;
+  }
+
+  /**
+   * Skips the blocks of the values array. Blocks with a negative item count are prefixed with
+   * their size in bytes and are skipped whole; the items of other blocks are skipped one by one.
+   */
+  private void skipValues() {
+    for (long count = readLong(); count != 0; count = readLong()) {
+      if (count < 0) {
+        skip(readLong());
+      } else {
+        for (long i = 0; i < count; i++) {
+          skip(readLong());
+          skip(readLong());
+          readLong();
+        }
+      }
+    }
+  }
+
+  private void skipOptionalLong() {
+    if (readUnionIndex()) {
+      readLong();
+    }
+  }
+
+  private void readString(ByteBufferCharSequence view) {
+    int size = readInt();
+    skip(size);
+    view.wrap(buffer, position - size, size);
+  }
+
+  private boolean readOptionalString(ByteBufferCharSequence view) {
+    if (readUnionIndex()) {
+      readString(view);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads the index of the branch of a {@code ["null", T]} union, returning whether the non-null
+   * branch is used.
+   */
+  private boolean readUnionIndex() {
+    long index = readLong();
+    if (index != 0 && index != 1) {
+      throw new QProcessingException("Invalid union index {}.", index);
+    }
+    return index == 1;
+  }
+
+  private void skip(long size) {
+    if (size < 0 || size > buffer.limit() - position) {
+      throw new QProcessingException("Invalid length {} at index {}.", size, position);
+    }
+    position += (int) size;
+  }
+
+  private int readInt() {
+    long value = readLong();
+    if (value != (int) value) {
+      throw new QProcessingException("Invalid int {} at index {}.", value, position);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Reads a zig-zag encoded variable-length long.
+   */
+  private long readLong() {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get(position++);
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return (value >>> 1) ^ -(value & 1);
+      }
+    }
+    throw new QProcessingException("Invalid long at index {}.", position);
+  }
+}
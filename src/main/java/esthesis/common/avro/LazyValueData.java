@@ -0,0 +1,45 @@
+package esthesis.common.avro;
+
+/**
+ * A {@link ValueData} created by the parser with lazy value type detection, see
+ * {@link AvroUtils#LAZY_VALUE_TYPES_PROPERTY}. It is the only kind of value
+ * {@link ValueDataResolver} resolves, so values of an explicitly stated
+ * {@link ValueTypeEnum#UNKNOWN} type, whether given by an entry or received from another
+ * component, are never re-classified.
+ * <p>
+ * A value is only resolvable while it holds the raw text it was parsed with: once its text or
+ * type is overwritten, e.g. by decoding into it, it is an ordinary value. Copies, including
+ * values serialized and read back, are ordinary values too, so values must be resolved before
+ * they leave the process. Like any Avro record of a different class, a lazy value is never equal
+ * to an ordinary {@link ValueData}; payloads holding them compare by content, however.
+ */
+final class LazyValueData extends ValueData {
+
+  // The raw text of the value as parsed, null once the value is no longer resolvable.
+  private String raw;
+
+  /**
+   * Sets the raw text of a value whose type is yet to be detected.
+   */
+  void setRaw(String raw) {
+    this.raw = raw;
+    setValue(raw);
+    setValueType(ValueTypeEnum.UNKNOWN);
+  }
+
+  /**
+   * Marks the value as no longer resolvable, e.g. once it is resolved or given a value of its
+   * own.
+   */
+  void clearRaw() {
+    raw = null;
+  }
+
+  /**
+   * Returns true if the value still holds the raw text it was parsed with.
+   */
+  boolean isUnresolved() {
+    // Compare by identity, as any other text, even an equal one, was set by someone else.
+    return raw != null && raw == getValue() && getValueType() == ValueTypeEnum.UNKNOWN;
+  }
+}
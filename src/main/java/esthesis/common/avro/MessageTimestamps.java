@@ -0,0 +1,84 @@
+package esthesis.common.avro;
+
+import java.time.Instant;
+
+/**
+ * Accessors for the timestamps of esthesis messages. Each timestamp is carried by an epoch-based
+ * field, using the {@code timestamp-micros} logical type, and by an ISO-8601 string field kept for
+ * compatibility with producers and consumers predating the epoch-based fields. The accessors
+ * return the epoch-based field when it is set, and otherwise fall back to parsing the string
+ * field, so consumers can read messages from either kind of producer.
+ */
+public final class MessageTimestamps {
+
+  private MessageTimestamps() {
+  }
+
+  /**
+   * Returns the time a data message was first received.
+   *
+   * @param message The message.
+   * @return The time, or null if none is set.
+   */
+  public static Instant getSeenAt(EsthesisDataMessage message) {
+    return resolve(message.getSeenAtMicros(), message.getSeenAt());
+  }
+
+  /**
+   * Returns the time pertaining to the values of a payload.
+   *
+   * @param payload The payload.
+   * @return The time, or null if none is set.
+   */
+  public static Instant getTimestamp(PayloadData payload) {
+    return resolve(payload.getTimestampMicros(), payload.getTimestamp());
+  }
+
+  /**
+   * Returns the time a command reply message was first received.
+   *
+   * @param message The message.
+   * @return The time, or null if none is set.
+   */
+  public static Instant getSeenAt(EsthesisCommandReplyMessage message) {
+    return resolve(message.getSeenAtMicros(), message.getSeenAt());
+  }
+
+  /**
+   * Returns the time a command request message was created.
+   *
+   * @param message The message.
+   * @return The time, or null if none is set.
+   */
+  public static Instant getCreatedAt(EsthesisCommandRequestMessage message) {
+    return resolve(message.getCreatedAtMicros(), message.getCreatedAt());
+  }
+
+  /**
+   * Returns the microseconds since the epoch of an instant, as carried on the wire by the
+   * epoch-based fields.
+   *
+   * @param instant The instant.
+   */
+  public static long toEpochMicros(Instant instant) {
+    return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L),
+        instant.getNano() / 1_000);
+  }
+
+  /**
+   * Returns the instant of a number of microseconds since the epoch.
+   *
+   * @param micros The microseconds since the epoch.
+   */
+  public static Instant ofEpochMicros(long micros) {
+    return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+        Math.floorMod(micros, 1_000_000L) * 1_000L);
+  }
+
+  private static Instant resolve(Instant micros, String iso) {
+    if (micros != null) {
+      return micros;
+    }
+    return iso != null ? ELPTimestamps.toInstant(iso, 0, iso.length()) : null;
+  }
+}
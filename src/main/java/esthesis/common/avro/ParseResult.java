@@ -0,0 +1,56 @@
+package esthesis.common.avro;
+
+/**
+ * The outcome of parsing a message without throwing on invalid input: either a {@link Success}
+ * holding the parsed value, or a {@link Failure} describing why the input was rejected. Returning
+ * failures as values rather than exceptions keeps the cost of rejecting malformed input low, e.g.
+ * when routing it to dead-letter handling.
+ *
+ * @param <T> The type of the parsed value.
+ */
+public sealed interface ParseResult<T> permits ParseResult.Success, ParseResult.Failure {
+
+  /**
+   * A successfully parsed value.
+   *
+   * @param value The parsed value.
+   * @param <T>   The type of the parsed value.
+   */
+  record Success<T>(T value) implements ParseResult<T> {
+
+  }
+
+  /**
+   * A rejected input.
+   *
+   * @param error  The reason of the rejection.
+   * @param offset The offset within the input at which the problem was found.
+   * @param reason A short description of the problem.
+   * @param <T>    The type of the value that would have been parsed.
+   */
+  record Failure<T>(ELPParseError error, int offset, String reason) implements ParseResult<T> {
+
+  }
+
+  static <T> ParseResult<T> success(T value) {
+    return new Success<>(value);
+  }
+
+  static <T> ParseResult<T> failure(ELPParseError error, int offset) {
+    return new Failure<>(error, offset, error.getDescription());
+  }
+
+  /**
+   * Returns true if the input was parsed successfully.
+   */
+  default boolean isSuccess() {
+    return this instanceof Success;
+  }
+
+  /**
+   * Returns the parsed value, or null if the input was rejected.
+   */
+  default T getValueOrNull() {
+    return this instanceof Success<T> success ? success.value() : null;
+  }
+}
@@ -0,0 +1,59 @@
+package esthesis.common.avro;
+
+import java.util.ArrayDeque;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A per-thread pool of {@link PayloadData} instances, to be used as targets of
+ * {@link AvroUtils#parsePayload(String, PayloadData)} by callers that work with a new payload data
+ * object per line but are done with it once the line is processed, e.g. after serialising it.
+ * Released instances keep their {@link ValueData} instances, which are recycled by the next parse.
+ * <p>
+ * Each thread has its own pool, so instances must be released by the thread that acquired them
+ * and must not be used after they are released.
+ */
+public final class PayloadDataPool {
+
+  // The default maximum number of instances pooled per thread.
+  public static final int DEFAULT_MAX_POOLED = 16;
+
+  private final int maxPooled;
+  private final ThreadLocal<ArrayDeque<PayloadData>> pool =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
+  public PayloadDataPool() {
+    this(DEFAULT_MAX_POOLED);
+  }
+
+  /**
+   * Creates a new pool.
+   *
+   * @param maxPooled The maximum number of instances pooled per thread.
+   */
+  public PayloadDataPool(int maxPooled) {
+    Validate.isTrue(maxPooled > 0, "The maximum number of pooled instances must be positive.");
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Returns a pooled payload data instance of the calling thread, or a new one if none is pooled.
+   * The contents of a pooled instance are those of its last use.
+   */
+  public PayloadData acquire() {
+    PayloadData payloadData = pool.get().pollFirst();
+    return payloadData != null ? payloadData : new PayloadData();
+  }
+
+  /**
+   * Returns a payload data instance to the pool of the calling thread. Instances beyond the
+   * maximum pool size are left to the garbage collector.
+   *
+   * @param payloadData The instance to release.
+   */
+  public void release(PayloadData payloadData) {
+    ArrayDeque<PayloadData> pooled = pool.get();
+    if (pooled.size() < maxPooled) {
+      pooled.addFirst(payloadData);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package esthesis.common.avro;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A bounded, concurrent table mapping frequently repeating names, such as categories, measurement
+ * names and hardware IDs, to canonical {@link String} instances and to stable small integer IDs.
+ * IDs are assigned densely in insertion order, starting from 0, and never change.
+ * <p>
+ * Names can be looked up from any region of a {@link CharSequence}, including the byte views used
+ * by the byte-level parsing path, without creating a {@link String} when the name is already
+ * known. Names within byte views are matched without decoding when they are ASCII, which is
+ * virtually always the case for names; other names are decoded first.
+ * <p>
+ * Once the table holds its maximum number of symbols, new names are no longer added: they are
+ * returned as fresh, non-canonical strings and have no ID.
+ * <p>
+ * Lookups are lock-free; adding a new symbol takes a lock.
+ */
+public final class SymbolTable {
+
+  // Returned as the ID of names that are not in the table.
+  public static final int NO_ID = -1;
+
+  // The symbols, by the hash of their name using open addressing, and by their ID.
+  private final AtomicReferenceArray<Symbol> table;
+  private final AtomicReferenceArray<String> symbolsById;
+  private final int mask;
+  private final int maxSymbols;
+  private volatile int size;
+
+  private record Symbol(String name, int hash, int id) {
+
+  }
+
+  /**
+   * Creates a new symbol table.
+   *
+   * @param maxSymbols The maximum number of symbols the table holds.
+   */
+  public SymbolTable(int maxSymbols) {
+    Validate.isTrue(maxSymbols > 0 && maxSymbols <= 1 << 29,
+        "The maximum number of symbols must be between 1 and 2^29.");
+    this.maxSymbols = maxSymbols;
+    // Keep the load factor at or below 0.5 so probe sequences remain short.
+    int capacity = Integer.highestOneBit(maxSymbols * 2 - 1) << 1;
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.symbolsById = new AtomicReferenceArray<>(maxSymbols);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Returns the canonical instance of a name, adding the name to the table if it is not known.
+   *
+   * @param name The name to intern.
+   * @return The canonical instance, or the name itself if the table is full.
+   */
+  public String intern(String name) {
+    Symbol symbol = find(name, 0, name.length(), name.hashCode(), true);
+    return symbol != null ? symbol.name() : name;
+  }
+
+  /**
+   * Returns the canonical instance of a name held in a region of a character sequence, adding the
+   * name to the table if it is not known.
+   *
+   * @param text The character sequence holding the name.
+   * @param from The start of the name, inclusive.
+   * @param to   The end of the name, exclusive.
+   * @return The canonical instance, or a fresh string if the table is full.
+   */
+  public String intern(CharSequence text, int from, int to) {
+    Symbol symbol = lookup(text, from, to, true);
+    return symbol != null ? symbol.name() : AvroUtils.text(text, from, to);
+  }
+
+  /**
+   * Returns the ID of a name, adding the name to the table if it is not known.
+   *
+   * @param text The character sequence holding the name.
+   * @param from The start of the name, inclusive.
+   * @param to   The end of the name, exclusive.
+   * @return The ID of the name, or {@link #NO_ID} if the table is full.
+   */
+  public int idOf(CharSequence text, int from, int to) {
+    Symbol symbol = lookup(text, from, to, true);
+    return symbol != null ? symbol.id() : NO_ID;
+  }
+
+  /**
+   * Returns the ID of a name without adding it to the table.
+   *
+   * @param name The name to get the ID of.
+   * @return The ID of the name, or {@link #NO_ID} if the name is not in the table.
+   */
+  public int getId(String name) {
+    Symbol symbol = find(name, 0, name.length(), name.hashCode(), false);
+    return symbol != null ? symbol.id() : NO_ID;
+  }
+
+  /**
+   * Returns the name having an ID.
+   *
+   * @param id The ID of the name.
+   * @return The name, or null if no name has this ID.
+   */
+  public String getSymbol(int id) {
+    return id >= 0 && id < maxSymbols ? symbolsById.get(id) : null;
+  }
+
+  /**
+   * Returns the number of symbols in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  private Symbol lookup(CharSequence text, int from, int to, boolean add) {
+    if (text instanceof String name && from == 0 && to == name.length()) {
+      return find(name, from, to, name.hashCode(), add);
+    }
+
+    int hash = 0;
+    boolean ascii = true;
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      hash = 31 * hash + c;
+      ascii &= c < 0x80;
+    }
+    if (!ascii && text instanceof Utf8CharSequence utf8) {
+      // Non-ASCII bytes do not match the chars of the name, decode it first.
+      String name = utf8.toString(from, to);
+      return find(name, 0, name.length(), name.hashCode(), add);
+    }
+
+    return find(text, from, to, hash, add);
+  }
+
+  /**
+   * Finds the symbol of a name, optionally adding it if it is not known.
+   *
+   * @param hash The hash of the name, as in {@link String#hashCode()}.
+   * @return The symbol, or null if the name is not known and was not added.
+   */
+  private Symbol find(CharSequence text, int from, int to, int hash, boolean add) {
+    int index = spread(hash) & mask;
+    for (Symbol symbol; (symbol = table.get(index)) != null; index = (index + 1) & mask) {
+      if (symbol.hash() == hash && matches(symbol.name(), text, from, to)) {
+        return symbol;
+      }
+    }
+
+    return add ? add(text, from, to, hash) : null;
+  }
+
+  private synchronized Symbol add(CharSequence text, int from, int to, int hash) {
+    // Another thread may have added the name in the meantime, so look again under the lock.
+    int index = spread(hash) & mask;
+    for (Symbol symbol; (symbol = table.get(index)) != null; index = (index + 1) & mask) {
+      if (symbol.hash() == hash && matches(symbol.name(), text, from, to)) {
+        return symbol;
+      }
+    }
+    if (size == maxSymbols) {
+      return null;
+    }
+
+    Symbol symbol = new Symbol(AvroUtils.text(text, from, to), hash, size);
+    symbolsById.set(symbol.id(), symbol.name());
+    table.set(index, symbol);
+    size++;
+    return symbol;
+  }
+
+  private static boolean matches(String name, CharSequence text, int from, int to) {
+    if (name.length() != to - from) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) != text.charAt(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,73 @@
+package esthesis.common.avro;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An appendable encoding characters as UTF-8 into a buffer, which can be re-pointed to a
+ * different buffer. Unpaired surrogates are encoded as '?', like {@link String#getBytes}.
+ */
+final class Utf8ByteBufferAppendable implements Appendable {
+
+  private ByteBuffer buffer;
+  // A high surrogate waiting for its low surrogate, or 0.
+  private char highSurrogate;
+
+  Utf8ByteBufferAppendable wrap(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.highSurrogate = 0;
+    return this;
+  }
+
+  @Override
+  public Appendable append(CharSequence csq) {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public Appendable append(CharSequence csq, int start, int end) {
+    for (int i = start; i < end; i++) {
+      append(csq.charAt(i));
+    }
+    return this;
+  }
+
+  @Override
+  public Appendable append(char c) {
+    if (highSurrogate != 0) {
+      char high = highSurrogate;
+      highSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int codePoint = Character.toCodePoint(high, c);
+        buffer.put((byte) (0xF0 | (codePoint >> 18)))
+            .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+            .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+            .put((byte) (0x80 | (codePoint & 0x3F)));
+        return this;
+      }
+      buffer.put((byte) '?');
+    }
+    if (c < 0x80) {
+      buffer.put((byte) c);
+    } else if (c < 0x800) {
+      buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+    } else if (Character.isHighSurrogate(c)) {
+      highSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      buffer.put((byte) '?');
+    } else {
+      buffer.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F)))
+          .put((byte) (0x80 | (c & 0x3F)));
+    }
+    return this;
+  }
+
+  /**
+   * Encodes a high surrogate left unpaired at the end of the text.
+   */
+  void finish() {
+    if (highSurrogate != 0) {
+      highSurrogate = 0;
+      buffer.put((byte) '?');
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package esthesis.common.avro;
+
+/**
+ * A {@link CharSequence} backed by UTF-8 encoded bytes, exposing each byte as a single char. Such
+ * sequences can be scanned for the ASCII structural characters of the esthesis line protocol
+ * without decoding, while text is only decoded on demand.
+ */
+public interface Utf8CharSequence extends CharSequence {
+
+  /**
+   * Decodes a part of this sequence into a String.
+   *
+   * @param start The start index, inclusive.
+   * @param end   The end index, exclusive.
+   */
+  String toString(int start, int end);
+}
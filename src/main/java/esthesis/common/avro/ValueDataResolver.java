@@ -0,0 +1,72 @@
+package esthesis.common.avro;
+
+import esthesis.common.data.HintedValue;
+
+/**
+ * Resolves the type of {@link ValueData} produced with lazy value type detection, see
+ * {@link AvroUtils#LAZY_VALUE_TYPES_PROPERTY}.
+ * <p>
+ * Values parsed lazily keep their raw text, including any quotes or type hint, and carry the
+ * {@link ValueTypeEnum#UNKNOWN} type until they are resolved. All other values, including values
+ * of an explicitly stated {@link ValueTypeEnum#UNKNOWN} type, are returned unchanged, so
+ * consumers can use these helpers regardless of the mode their producer used. Values parsed
+ * lazily are only resolvable within the process that parsed them, see {@link LazyValueData}.
+ */
+public final class ValueDataResolver {
+
+  private ValueDataResolver() {
+  }
+
+  /**
+   * Returns the type of a value, detecting it if the value was parsed lazily.
+   *
+   * @param valueData The value to get the type of.
+   */
+  public static ValueTypeEnum getValueType(ValueData valueData) {
+    if (!isUnresolved(valueData)) {
+      return valueData.getValueType();
+    }
+    return ValueTypeEnum.valueOf(HintedValue.of(valueData.getValue()).getValueType().name());
+  }
+
+  /**
+   * Resolves a value parsed lazily in place, replacing its raw text with the value without quotes
+   * or type hint, and setting its detected type.
+   *
+   * @param valueData The value to resolve.
+   * @return The same value, resolved.
+   */
+  public static ValueData resolve(ValueData valueData) {
+    if (isUnresolved(valueData)) {
+      LazyValueData lazyValueData = (LazyValueData) valueData;
+      String raw = lazyValueData.getValue();
+      HintedValue hintedValue = HintedValue.of(raw);
+      lazyValueData.clearRaw();
+      lazyValueData.setValue(raw.substring(hintedValue.getStart(), hintedValue.getEnd()));
+      lazyValueData.setValueType(ValueTypeEnum.valueOf(hintedValue.getValueType().name()));
+    }
+    return valueData;
+  }
+
+  /**
+   * Returns true if a value was parsed lazily and is yet to be resolved.
+   *
+   * @param valueData The value to check.
+   */
+  public static boolean isUnresolved(ValueData valueData) {
+    return valueData instanceof LazyValueData lazyValueData && lazyValueData.isUnresolved();
+  }
+
+  /**
+   * Resolves all values of a payload parsed lazily in place, see {@link #resolve(ValueData)}.
+   *
+   * @param payloadData The payload to resolve the values of.
+   * @return The same payload, resolved.
+   */
+  public static PayloadData resolve(PayloadData payloadData) {
+    for (ValueData valueData : payloadData.getValues()) {
+      resolve(valueData);
+    }
+    return payloadData;
+  }
+}
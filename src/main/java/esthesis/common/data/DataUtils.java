@@ -1,13 +1,9 @@
 package esthesis.common.data;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.AbstractMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Stream;
-import org.apache.commons.lang3.BooleanUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 
 /**
  * A utility class for data manipulation.
@@ -24,79 +20,13 @@ public class DataUtils {
   }
 
   /**
-   * A best-effort method to detect the type of a value.
+   * A best-effort method to detect the type of a value. The value is classified lexically in a
+   * single scan, see {@link ValueTypeClassifier}.
    *
    * @param val The value to detect its type.
    */
-  @SuppressWarnings("java:S3776")
   public static ValueType detectValueType(String val) {
-    if (NumberUtils.isCreatable(val)) {
-      try {
-        if (val.equals(String.valueOf(Byte.parseByte(val)))) {
-          return ValueType.BYTE;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(Short.parseShort(val)))) {
-          return ValueType.SHORT;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(Integer.parseInt(val)))) {
-          return ValueType.INTEGER;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(Long.parseLong(val)))) {
-          return ValueType.LONG;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-
-      try {
-        if (val.equals(String.valueOf(Float.parseFloat(val)))) {
-          return ValueType.FLOAT;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(Double.parseDouble(val)))) {
-          return ValueType.DOUBLE;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(new BigInteger(val)))) {
-          return ValueType.BIG_INTEGER;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-      try {
-        if (val.equals(String.valueOf(new BigDecimal(val)))) {
-          return ValueType.BIG_DECIMAL;
-        }
-      } catch (NumberFormatException e) {
-        // Ignore
-      }
-
-      return ValueType.UNKNOWN;
-    } else {
-      if (BooleanUtils.toBooleanObject(val) != null) {
-        return ValueType.BOOLEAN;
-      } else {
-        return ValueType.STRING;
-      }
-    }
+    return ValueTypeClassifier.classify(val);
   }
 
   /**
@@ -105,42 +35,21 @@ public class DataUtils {
    * <pre>
    *   - If the value starts and ends with a single quote, it is a String.
    *   - If the value is "true" or "false" (case is ignored), it is a Boolean.
+   *   - If the value ends in "bi", it is a BigInteger.
+   *   - If the value ends in "bd", it is a BigDecimal.
    *   - If the value ends in "b", it is a Byte.
    *   - If the value ends in "s", it is a Short.
    *   - If the value ends in "i", it is an Integer.
    *   - If the value ends in "l", it is a Long.
-   *   - If the value ends in "bi", it is a BigInteger.
    *   - If the value ends in "f", it is a Float.
    *   - If the value ends in "d", it is a Double.
-   *   - If the value ends in "bd", it is a BigDecimal.
    * </pre>
+   * See {@link HintedValue} for the exact grammar, and for obtaining the value without its hint.
    *
    * @param val The value to detect its type.
    */
   public static ValueType detectValueTypeWithHints(String val) {
-    if (val.startsWith("'") && val.endsWith("'")) {
-      return ValueType.STRING;
-    } else if (val.equalsIgnoreCase("true") || val.equalsIgnoreCase("false")) {
-      return ValueType.BOOLEAN;
-    } else if (val.endsWith("b")) {
-      return ValueType.BYTE;
-    } else if (val.endsWith("s")) {
-      return ValueType.SHORT;
-    } else if (val.endsWith("i")) {
-      return ValueType.INTEGER;
-    } else if (val.endsWith("l")) {
-      return ValueType.LONG;
-    } else if (val.endsWith("bi")) {
-      return ValueType.BIG_INTEGER;
-    } else if (val.endsWith("f")) {
-      return ValueType.FLOAT;
-    } else if (val.endsWith("d")) {
-      return ValueType.DOUBLE;
-    } else if (val.endsWith("bd")) {
-      return ValueType.BIG_DECIMAL;
-    } else {
-      return detectValueType(val);
-    }
+    return HintedValue.of(val).getValueType();
   }
 
   /**
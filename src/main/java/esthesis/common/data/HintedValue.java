@@ -0,0 +1,121 @@
+package esthesis.common.data;
+
+import esthesis.common.data.DataUtils.ValueType;
+
+/**
+ * Resolves the type of a value expressed with the type hints of the esthesis line protocol,
+ * together with the boundaries of the value once its hint is removed, in a single pass. The value
+ * grammar is:
+ * <pre>
+ *   value   := quoted | boolean | hinted | plain
+ *   quoted  := "'" chars "'"                    (STRING, without the quotes)
+ *   boolean := "true" | "false", any case       (BOOLEAN)
+ *   hinted  := body ("bi" | "bd")               (BIG_INTEGER, BIG_DECIMAL, without the hint)
+ *            | body ("b" | "s" | "i" | "l" | "f" | "d")
+ *                                               (BYTE, SHORT, INTEGER, LONG, FLOAT, DOUBLE,
+ *                                                without the hint)
+ *   plain   := chars                            (type detected by {@link ValueTypeClassifier})
+ * </pre>
+ * Two-letter hints are matched before single-letter ones, and a hint is only recognised when it
+ * follows a non-empty body.
+ * <p>
+ * Instances are mutable so that a single instance can be reused for all values of a line; they
+ * are not thread-safe.
+ */
+public final class HintedValue {
+
+  private ValueType valueType;
+  private int start;
+  private int end;
+
+  /**
+   * Resolves a value.
+   *
+   * @param val The value to resolve.
+   * @return A new resolved value.
+   */
+  public static HintedValue of(CharSequence val) {
+    return new HintedValue().resolve(val, 0, val.length());
+  }
+
+  /**
+   * Resolves a value held in a region of a character sequence, replacing any previously resolved
+   * value.
+   *
+   * @param val  The character sequence holding the value.
+   * @param from The start of the value, inclusive.
+   * @param to   The end of the value, exclusive.
+   * @return This instance.
+   */
+  public HintedValue resolve(CharSequence val, int from, int to) {
+    int length = to - from;
+    start = from;
+    end = to;
+    if (length >= 2 && val.charAt(from) == '\'' && val.charAt(to - 1) == '\'') {
+      valueType = ValueType.STRING;
+      start = from + 1;
+      end = to - 1;
+    } else if (isBoolean(val, from, length)) {
+      valueType = ValueType.BOOLEAN;
+    } else {
+      char last = length >= 2 ? val.charAt(to - 1) : 0;
+      char beforeLast = length >= 3 ? val.charAt(to - 2) : 0;
+      if (beforeLast == 'b' && (last == 'i' || last == 'd')) {
+        valueType = last == 'i' ? ValueType.BIG_INTEGER : ValueType.BIG_DECIMAL;
+        end = to - 2;
+      } else {
+        valueType = switch (last) {
+          case 'b' -> ValueType.BYTE;
+          case 's' -> ValueType.SHORT;
+          case 'i' -> ValueType.INTEGER;
+          case 'l' -> ValueType.LONG;
+          case 'f' -> ValueType.FLOAT;
+          case 'd' -> ValueType.DOUBLE;
+          default -> null;
+        };
+        if (valueType != null) {
+          end = to - 1;
+        } else {
+          valueType = ValueTypeClassifier.classify(val, from, to);
+        }
+      }
+    }
+
+    return this;
+  }
+
+  private static boolean isBoolean(CharSequence val, int from, int length) {
+    return (length == 4 && matches(val, from, "true"))
+        || (length == 5 && matches(val, from, "false"));
+  }
+
+  private static boolean matches(CharSequence val, int from, String word) {
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.toLowerCase(val.charAt(from + i)) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The resolved type of the value.
+   */
+  public ValueType getValueType() {
+    return valueType;
+  }
+
+  /**
+   * The start of the value without its quotes or hint, inclusive.
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * The end of the value without its quotes or hint, exclusive.
+   */
+  public int getEnd() {
+    return end;
+  }
+}
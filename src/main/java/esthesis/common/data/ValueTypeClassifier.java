@@ -0,0 +1,347 @@
+package esthesis.common.data;
+
+import esthesis.common.data.DataUtils.ValueType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * A lexical classifier deciding the narrowest {@link ValueType} of a value in a single scan of its
+ * characters, without parsing it and without throwing or allocating. The result is always the
+ * same as the one of the original parse-and-compare cascade, which is kept as
+ * {@link #classifyByParsing(String)}.
+ * <p>
+ * The classifier decides lexically the forms telemetry values almost always take: plain integers,
+ * plain decimals, booleans and strings. The few forms whose outcome depends on the exact binary
+ * floating point representation (decimals with 7 to 9 or more than 15 significant digits), or that
+ * are rarely seen in telemetry (exponents, hexadecimal and octal numbers, type qualifiers, leading
+ * zeros, negative zeros), are delegated to the original cascade.
+ */
+public final class ValueTypeClassifier {
+
+  // The maximum number of significant digits for which any decimal is the shortest
+  // representation of its nearest float, and of its nearest double respectively.
+  private static final int FLOAT_UNIQUE_DIGITS = 6;
+  private static final int DOUBLE_UNIQUE_DIGITS = 15;
+  // The maximum number of significant digits of the shortest representation of a float.
+  private static final int FLOAT_MAX_DIGITS = 9;
+  // The maximum number of integer digits Float/Double.toString renders without an exponent.
+  private static final int PLAIN_FLOATING_POINT_MAX_INTEGER_DIGITS = 7;
+  // The maximum number of leading fraction zeros Float/Double.toString renders without an
+  // exponent, i.e. for values down to 10^-3.
+  private static final int PLAIN_FLOATING_POINT_MAX_LEADING_ZEROS = 2;
+  // The minimum adjusted exponent BigDecimal.toString renders without an exponent.
+  private static final int PLAIN_BIG_DECIMAL_MIN_ADJUSTED_EXPONENT = -6;
+  // The number of digits of Long.MIN_VALUE and Long.MAX_VALUE, and their values without the
+  // last digit.
+  private static final int LONG_DIGITS = 19;
+  private static final long LONG_LIMIT_PREFIX = Long.MAX_VALUE / 10;
+
+  private ValueTypeClassifier() {
+  }
+
+  /**
+   * Classifies a value, see {@link DataUtils#detectValueType(String)}.
+   *
+   * @param val The value to classify.
+   */
+  public static ValueType classify(CharSequence val) {
+    if (val == null) {
+      return ValueType.STRING;
+    }
+    return classify(val, 0, val.length());
+  }
+
+  /**
+   * Classifies a value held in a region of a character sequence, see
+   * {@link DataUtils#detectValueType(String)}.
+   *
+   * @param val  The character sequence holding the value.
+   * @param from The start of the value, inclusive.
+   * @param to   The end of the value, exclusive.
+   */
+  @SuppressWarnings("java:S3776")
+  public static ValueType classify(CharSequence val, int from, int to) {
+    // Try to scan a plain number: [-](0|[1-9][0-9]*)[.[0-9]+]
+    int i = from;
+    boolean negative = false;
+    if (i < to && val.charAt(i) == '-') {
+      negative = true;
+      i++;
+    }
+    int intStart = i;
+    while (i < to && isDigit(val.charAt(i))) {
+      i++;
+    }
+    int intEnd = i;
+    int fracStart = -1;
+    if (i < to && val.charAt(i) == '.') {
+      fracStart = ++i;
+      while (i < to && isDigit(val.charAt(i))) {
+        i++;
+      }
+    }
+    boolean plainNumber = i == to && intEnd > intStart && fracStart != to
+        && (val.charAt(intStart) != '0' || intEnd - intStart == 1);
+
+    ValueType valueType = null;
+    if (plainNumber) {
+      valueType = fracStart < 0
+          ? classifyInteger(val, negative, intStart, intEnd)
+          : classifyDecimal(val, negative, intStart, intEnd, fracStart, to);
+    } else if (!couldBeCreatable(val, from, to)) {
+      valueType = isBoolean(val, from, to) ? ValueType.BOOLEAN : ValueType.STRING;
+    }
+
+    if (valueType == null) {
+      valueType = classifyByParsing(val.subSequence(from, to).toString());
+    }
+
+    return valueType;
+  }
+
+  /**
+   * Classifies a plain integer without leading zeros.
+   *
+   * @return The value type, or null if it can not be decided lexically.
+   */
+  private static ValueType classifyInteger(CharSequence val, boolean negative, int start,
+      int end) {
+    int digits = end - start;
+    if (digits > LONG_DIGITS) {
+      return ValueType.BIG_INTEGER;
+    }
+
+    long magnitude = 0;
+    int prefixEnd = Math.min(end, start + LONG_DIGITS - 1);
+    for (int i = start; i < prefixEnd; i++) {
+      magnitude = magnitude * 10 + (val.charAt(i) - '0');
+    }
+    if (digits == LONG_DIGITS) {
+      // Values with 19 digits are either a long or a BigInteger.
+      int last = val.charAt(end - 1) - '0';
+      int lastLimit = negative ? 8 : 7;
+      return magnitude < LONG_LIMIT_PREFIX
+          || (magnitude == LONG_LIMIT_PREFIX && last <= lastLimit)
+          ? ValueType.LONG : ValueType.BIG_INTEGER;
+    }
+    if (negative && magnitude == 0) {
+      // "-0" is not rendered back as is by any of the number types.
+      return null;
+    }
+
+    long value = negative ? -magnitude : magnitude;
+    if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      return ValueType.BYTE;
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      return ValueType.SHORT;
+    } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      return ValueType.INTEGER;
+    } else {
+      return ValueType.LONG;
+    }
+  }
+
+  /**
+   * Classifies a plain decimal with an integer part without leading zeros. A decimal is a FLOAT
+   * or a DOUBLE if it is exactly what Float/Double.toString would render for its value, otherwise
+   * a BIG_DECIMAL if it is exactly what BigDecimal.toString would render.
+   *
+   * @return The value type, or null if it can not be decided lexically.
+   */
+  @SuppressWarnings("java:S107")
+  private static ValueType classifyDecimal(CharSequence val, boolean negative, int intStart,
+      int intEnd, int fracStart, int fracEnd) {
+    int intDigits = intEnd - intStart;
+    int fracDigits = fracEnd - fracStart;
+    boolean intIsZero = val.charAt(intStart) == '0';
+
+    // Count the leading and trailing zeros of the fraction.
+    int leadingZeros = 0;
+    while (fracStart + leadingZeros < fracEnd && val.charAt(fracStart + leadingZeros) == '0') {
+      leadingZeros++;
+    }
+    if (leadingZeros == fracDigits) {
+      // A zero fraction; of all zero-valued decimals only "0.0" is decided lexically.
+      if (intIsZero) {
+        return !negative && fracDigits == 1 ? ValueType.FLOAT : null;
+      }
+      if (fracDigits == 1 && intDigits <= PLAIN_FLOATING_POINT_MAX_INTEGER_DIGITS) {
+        return classifyFloatingPoint(countSignificantDigits(val, intStart, intEnd));
+      }
+      return ValueType.BIG_DECIMAL;
+    }
+    int trailingZeros = 0;
+    while (val.charAt(fracEnd - 1 - trailingZeros) == '0') {
+      trailingZeros++;
+    }
+
+    // Check whether Float/Double.toString could render this exact layout.
+    boolean floatingPointLayout = trailingZeros == 0
+        && intDigits <= PLAIN_FLOATING_POINT_MAX_INTEGER_DIGITS
+        && (!intIsZero || leadingZeros <= PLAIN_FLOATING_POINT_MAX_LEADING_ZEROS);
+    if (floatingPointLayout) {
+      int significantDigits = intIsZero
+          ? fracDigits - leadingZeros
+          : intDigits + fracDigits;
+      return classifyFloatingPoint(significantDigits);
+    }
+
+    // Check whether BigDecimal.toString renders this value without an exponent.
+    int precision = intIsZero ? fracDigits - leadingZeros : intDigits + fracDigits;
+    int adjustedExponent = precision - 1 - fracDigits;
+    return adjustedExponent >= PLAIN_BIG_DECIMAL_MIN_ADJUSTED_EXPONENT
+        ? ValueType.BIG_DECIMAL : ValueType.UNKNOWN;
+  }
+
+  /**
+   * Classifies a decimal laid out exactly as Float/Double.toString would render it, based on its
+   * number of significant digits.
+   *
+   * @return The value type, or null if it can not be decided lexically.
+   */
+  private static ValueType classifyFloatingPoint(int significantDigits) {
+    if (significantDigits <= FLOAT_UNIQUE_DIGITS) {
+      return ValueType.FLOAT;
+    } else if (significantDigits > FLOAT_MAX_DIGITS && significantDigits <= DOUBLE_UNIQUE_DIGITS) {
+      return ValueType.DOUBLE;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Counts the significant digits of an integer without leading zeros.
+   */
+  private static int countSignificantDigits(CharSequence val, int start, int end) {
+    while (end > start && val.charAt(end - 1) == '0') {
+      end--;
+    }
+    return end - start;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Checks whether all characters of a value may appear in a value accepted by
+   * {@link NumberUtils#isCreatable(String)}.
+   */
+  private static boolean couldBeCreatable(CharSequence val, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = val.charAt(i);
+      boolean allowed = isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')
+          || c == '.' || c == '-' || c == '+' || c == 'x' || c == 'X' || c == 'l' || c == 'L';
+      if (!allowed) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether a value is a boolean, as accepted by
+   * {@link BooleanUtils#toBooleanObject(String)}.
+   */
+  private static boolean isBoolean(CharSequence val, int from, int to) {
+    return switch (to - from) {
+      case 1 -> "yYtTnNfF10".indexOf(val.charAt(from)) >= 0;
+      case 2 -> matches(val, from, "on") || matches(val, from, "no");
+      case 3 -> matches(val, from, "yes") || matches(val, from, "off");
+      case 4 -> matches(val, from, "true");
+      case 5 -> matches(val, from, "false");
+      default -> false;
+    };
+  }
+
+  /**
+   * Case-insensitively matches an ASCII lowercase word at the given position.
+   */
+  private static boolean matches(CharSequence val, int from, String word) {
+    for (int i = 0; i < word.length(); i++) {
+      if ((val.charAt(from + i) | 0x20) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The original best-effort type detection, parsing the value as each of the supported number
+   * types in turn and checking whether the parsed number renders back to the same value.
+   *
+   * @param val The value to detect its type.
+   */
+  @SuppressWarnings("java:S3776")
+  static ValueType classifyByParsing(String val) {
+    if (NumberUtils.isCreatable(val)) {
+      try {
+        if (val.equals(String.valueOf(Byte.parseByte(val)))) {
+          return ValueType.BYTE;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(Short.parseShort(val)))) {
+          return ValueType.SHORT;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(Integer.parseInt(val)))) {
+          return ValueType.INTEGER;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(Long.parseLong(val)))) {
+          return ValueType.LONG;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+
+      try {
+        if (val.equals(String.valueOf(Float.parseFloat(val)))) {
+          return ValueType.FLOAT;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(Double.parseDouble(val)))) {
+          return ValueType.DOUBLE;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(new BigInteger(val)))) {
+          return ValueType.BIG_INTEGER;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+      try {
+        if (val.equals(String.valueOf(new BigDecimal(val)))) {
+          return ValueType.BIG_DECIMAL;
+        }
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+
+      return ValueType.UNKNOWN;
+    } else {
+      if (BooleanUtils.toBooleanObject(val) != null) {
+        return ValueType.BOOLEAN;
+      } else {
+        return ValueType.STRING;
+      }
+    }
+  }
+}
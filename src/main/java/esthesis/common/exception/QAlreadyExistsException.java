@@ -20,4 +20,9 @@ public class QAlreadyExistsException extends QException {
   public QAlreadyExistsException(String message, Object... args) {
     super(message, args);
   }
+
+  public QAlreadyExistsException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -17,4 +17,9 @@ public class QAuthenticationException extends QSecurityException {
   public QAuthenticationException(String msg, Object... args) {
     super(msg, args);
   }
+
+  public QAuthenticationException(String msg, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(msg, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -17,4 +17,9 @@ public class QAuthorisationException extends QSecurityException {
   public QAuthorisationException(String msg, Object... args) {
     super(msg, args);
   }
+
+  public QAuthorisationException(String msg, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(msg, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -16,4 +16,9 @@ public class QCouldNotDeleteException extends QException {
   public QCouldNotDeleteException(String message, Throwable cause) {
     super(message, cause);
   }
+
+  public QCouldNotDeleteException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
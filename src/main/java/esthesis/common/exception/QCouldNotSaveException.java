@@ -16,4 +16,9 @@ public class QCouldNotSaveException extends QException {
   public QCouldNotSaveException(String message, Throwable cause) {
     super(message, cause);
   }
+
+  public QCouldNotSaveException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
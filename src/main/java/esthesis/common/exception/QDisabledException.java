@@ -20,4 +20,9 @@ public class QDisabledException extends QException {
   public QDisabledException(String message, Object... args) {
     super(message, args);
   }
+
+  public QDisabledException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -20,4 +20,9 @@ public class QDoesNotExistException extends QException {
   public QDoesNotExistException(String message, Object... args) {
     super(message, args);
   }
+
+  public QDoesNotExistException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
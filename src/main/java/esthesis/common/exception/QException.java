@@ -1,37 +1,209 @@
 package esthesis.common.exception;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 /**
  * Parent exception type.
+ * <p>
+ * Messages given as a pattern with arguments are only formatted when {@link #getMessage()} is
+ * first called, so exceptions that are caught and handled without being logged never pay for
+ * formatting. Arguments are formatted via their {@code toString()} at that time.
+ * <p>
+ * Exceptions used for control flow can be made stackless, skipping the capture of the stack
+ * trace: either per exception instance, using
+ * {@link #QException(String, Throwable, boolean, boolean)} with {@code writableStackTrace} set to
+ * false, or via the {@value #STACKLESS_PROPERTY} configuration property. The property accepts
+ * either {@code true}, making all exceptions stackless, or a comma-separated list of exception
+ * class names (simple or fully qualified), making the listed exceptions and their subclasses
+ * stackless, e.g. {@code esthesis.exception.stackless=QMismatchException}. All concrete
+ * exceptions expose the {@code writableStackTrace} constructor.
  */
 public abstract class QException extends RuntimeException implements Serializable {
 
+  // The configuration property selecting which exceptions are stackless.
+  public static final String STACKLESS_PROPERTY = "esthesis.exception.stackless";
+
+  // The message pattern and its arguments, when the message is formatted lazily.
+  private final String messagePattern;
+  private final transient Object[] messageArgs;
+  private String formattedMessage;
+
   protected QException() {
+    this.messagePattern = null;
+    this.messageArgs = null;
   }
 
   protected QException(String message) {
     super(message);
+    this.messagePattern = null;
+    this.messageArgs = null;
   }
 
   protected QException(String message, Object... args) {
-    super(org.slf4j.helpers.MessageFormatter.arrayFormat(message, args).getMessage());
+    this.messagePattern = message;
+    this.messageArgs = args;
   }
 
   protected QException(String message, Throwable cause) {
     super(message, cause);
+    this.messagePattern = null;
+    this.messageArgs = null;
   }
 
   protected QException(String message, Throwable cause, Object... args) {
-    super(org.slf4j.helpers.MessageFormatter.arrayFormat(message, args).getMessage(), cause);
+    super(null, cause);
+    this.messagePattern = message;
+    this.messageArgs = args;
   }
 
   protected QException(Throwable cause) {
     super(cause);
+    this.messagePattern = null;
+    this.messageArgs = null;
   }
 
   protected QException(String message, Throwable cause, boolean enableSuppression,
       boolean writableStackTrace) {
     super(message, cause, enableSuppression, writableStackTrace);
+    this.messagePattern = null;
+    this.messageArgs = null;
+  }
+
+  @Override
+  public String getMessage() {
+    if (messagePattern == null) {
+      return super.getMessage();
+    }
+    // Formatting is idempotent, so concurrent first calls are harmless.
+    String message = formattedMessage;
+    if (message == null) {
+      message = org.slf4j.helpers.MessageFormatter.arrayFormat(messagePattern, messageArgs)
+          .getMessage();
+      formattedMessage = message;
+    }
+    return message;
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    if (StacklessTypes.isStackless(getClass())) {
+      return this;
+    }
+    return super.fillInStackTrace();
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // The arguments are not serialized, so format the message while they are still available.
+    getMessage();
+    out.defaultWriteObject();
+  }
+
+  /**
+   * Parses the value of the {@value #STACKLESS_PROPERTY} configuration property.
+   *
+   * @param value The value of the property, either {@code true} or a comma-separated list of
+   *              exception class names.
+   * @return The individual entries of the value.
+   */
+  static Set<String> parseStacklessTypes(String value) {
+    return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+  }
+
+  /**
+   * Checks whether an exception type is stackless according to the given configuration, i.e.
+   * whether all exceptions are stackless or the type or any of its parents is listed by its
+   * simple or fully qualified name.
+   *
+   * @param type       The exception type to check.
+   * @param configured The configuration, as parsed by {@link #parseStacklessTypes(String)}.
+   */
+  static boolean isStackless(Class<?> type, Set<String> configured) {
+    if (configured.stream().anyMatch("true"::equalsIgnoreCase)) {
+      return true;
+    }
+    for (Class<?> c = type; c != null && c != RuntimeException.class; c = c.getSuperclass()) {
+      if (configured.contains(c.getName()) || configured.contains(c.getSimpleName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolves, once per exception type, whether it is configured to be stackless. The
+   * configuration is looked up lazily, and resolved again whenever the configuration in effect
+   * changes, e.g. once Quarkus has started, so exceptions constructed before the configuration
+   * is ready do not fix the setting for the life of the JVM.
+   */
+  private static final class StacklessTypes {
+
+    // The stackless types resolved from the configuration last in effect.
+    private static volatile StacklessTypes resolved;
+    // Cleared when no configuration implementation is available at all.
+    private static volatile boolean configAvailable = true;
+
+    // The configuration the types were resolved from, null for system properties.
+    private final Config config;
+    // The value of the property the types were resolved from.
+    private final String value;
+    private final Set<String> configured;
+    private final ClassValue<Boolean> stackless = new ClassValue<>() {
+      @Override
+      protected Boolean computeValue(Class<?> type) {
+        return QException.isStackless(type, configured);
+      }
+    };
+
+    private StacklessTypes(Config config, String value) {
+      this.config = config;
+      this.value = value;
+      this.configured = parseStacklessTypes(value);
+    }
+
+    static boolean isStackless(Class<?> type) {
+      Config config = currentConfig();
+      // Without a configuration, system properties are cheap enough to check every time.
+      String value = config == null ? System.getProperty(STACKLESS_PROPERTY, "") : null;
+      StacklessTypes types = resolved;
+      if (types == null || types.config != config
+          || (value != null && !value.equals(types.value))) {
+        // Resolving is idempotent, so concurrent first calls are harmless.
+        if (config != null) {
+          value = config.getOptionalValue(STACKLESS_PROPERTY, String.class).orElse("");
+        }
+        types = new StacklessTypes(config, value);
+        resolved = types;
+      }
+      return !types.configured.isEmpty() && types.stackless.get(type);
+    }
+
+    /**
+     * Returns the configuration currently in effect, or null if none is available (yet), in
+     * which case system properties are used instead, as exceptions must remain constructible
+     * regardless.
+     */
+    private static Config currentConfig() {
+      if (!configAvailable) {
+        return null;
+      }
+      try {
+        return ConfigProvider.getConfig();
+      } catch (LinkageError e) {
+        // No configuration implementation on the classpath, there is no point in retrying.
+        configAvailable = false;
+        return null;
+      } catch (RuntimeException e) {
+        // The configuration is not ready yet, retry with the next exception.
+        return null;
+      }
+    }
   }
 }
@@ -20,4 +20,9 @@ public class QExceptionWrapper extends QException {
   public QExceptionWrapper(String message, Object... args) {
     super(message, args);
   }
+
+  public QExceptionWrapper(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
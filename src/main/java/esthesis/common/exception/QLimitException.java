@@ -16,4 +16,9 @@ public class QLimitException extends QException {
   public QLimitException(String msg, Object... args) {
     super(msg, args);
   }
+
+  public QLimitException(String msg, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(msg, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -20,4 +20,9 @@ public class QMismatchException extends QException {
   public QMismatchException(String message, Object... args) {
     super(message, args);
   }
+
+  public QMismatchException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
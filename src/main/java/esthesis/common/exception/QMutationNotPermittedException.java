@@ -16,4 +16,9 @@ public class QMutationNotPermittedException extends QException {
   public QMutationNotPermittedException(String message, Throwable cause) {
     super(message, cause);
   }
+
+  public QMutationNotPermittedException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -20,4 +20,9 @@ public class QProcessingException extends QException {
   public QProcessingException(String message, Object... args) {
     super(message, args);
   }
+
+  public QProcessingException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
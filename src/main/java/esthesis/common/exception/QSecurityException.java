@@ -24,4 +24,9 @@ public class QSecurityException extends QException {
   public QSecurityException(String msg, Object... args) {
     super(msg, args);
   }
+
+  public QSecurityException(String msg, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(msg, cause, enableSuppression, writableStackTrace);
+  }
 }
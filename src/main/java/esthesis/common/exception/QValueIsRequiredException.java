@@ -20,4 +20,9 @@ public class QValueIsRequiredException extends QException {
   public QValueIsRequiredException(String message, Object... args) {
     super(message, args);
   }
+
+  public QValueIsRequiredException(String message, Throwable cause, boolean enableSuppression,
+      boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
 }
@@ -0,0 +1,87 @@
+package esthesis.common.util;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates identifiers for messages. Besides random (version 4) UUIDs, it generates time-ordered
+ * version 7 UUIDs, as specified by
+ * <a href="https://www.rfc-editor.org/rfc/rfc9562#section-5.7">RFC 9562</a>, which sort by the
+ * time they were generated and hence index well in most stores.
+ * <p>
+ * Version 7 UUIDs are generated without any locking: each thread holds its own random generator,
+ * seeded once from a {@link SecureRandom}, and its own 12-bit counter, so that the UUIDs
+ * generated by a thread within the same millisecond remain ordered. Should the counter overflow,
+ * the timestamp is advanced by a millisecond.
+ */
+public final class IdGenerator {
+
+  /**
+   * The strategies to generate identifiers with.
+   */
+  public enum Strategy {
+    // Random (version 4) UUIDs, see UUID#randomUUID().
+    RANDOM,
+    // Time-ordered (version 7) UUIDs.
+    UUID7
+  }
+
+  // The source of the seeds of the random generators of each thread.
+  private static final SecureRandom SEEDS = new SecureRandom();
+
+  // The version 7 generation state of each thread.
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private IdGenerator() {
+  }
+
+  /**
+   * The version 7 generation state of a thread.
+   */
+  private static final class State {
+
+    private final SplittableRandom random;
+    private long lastMillis;
+    private int counter;
+
+    State() {
+      long seed;
+      synchronized (SEEDS) {
+        seed = SEEDS.nextLong();
+      }
+      random = new SplittableRandom(seed);
+    }
+  }
+
+  /**
+   * Generates an identifier.
+   *
+   * @param strategy The strategy to generate the identifier with.
+   * @return The identifier, as a UUID string.
+   */
+  public static String nextId(Strategy strategy) {
+    return (strategy == Strategy.RANDOM ? UUID.randomUUID() : uuid7()).toString();
+  }
+
+  /**
+   * Generates a time-ordered, version 7 UUID.
+   */
+  public static UUID uuid7() {
+    State state = STATE.get();
+    long millis = System.currentTimeMillis();
+    if (millis > state.lastMillis) {
+      state.lastMillis = millis;
+      // Start from a random counter, leaving room for the UUIDs of the rest of the millisecond.
+      state.counter = state.random.nextInt(1 << 11);
+    } else if (++state.counter > 0xFFF) {
+      state.lastMillis++;
+      state.counter = 0;
+    }
+
+    long msb = (state.lastMillis << 16) | 0x7000L | state.counter;
+    long lsb = (state.random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+    return new UUID(msb, lsb);
+  }
+}
@@ -0,0 +1,189 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import esthesis.common.exception.QProcessingException;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.avro.specific.SpecificData;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class AvroCodecTest {
+
+  @Inject
+  AvroCodec avroCodec;
+
+  @Inject
+  AvroUtils avroUtils;
+
+  private EsthesisDataMessage dataMessage(String line) {
+    return EsthesisDataMessage.newBuilder().setId("1").setHardwareId("dev1").setSeenBy("test")
+        .setType(MessageTypeEnum.T).setChannel("telemetry")
+        .setPayload(avroUtils.parsePayload(line)).build();
+  }
+
+  @Test
+  void encodeAndDecode() {
+    EsthesisDataMessage message = dataMessage("cpu load=1.5,temp=20 2024-01-01T00:00:00Z");
+    byte[] bytes = avroCodec.encode(message);
+    assertEquals(message, avroCodec.decode(bytes, EsthesisDataMessage.class));
+
+    EsthesisCommandReplyMessage reply = avroUtils.parseCommandReplyLP("abc s ok", "dev1", "app",
+        "topic");
+    assertEquals(reply, avroCodec.decode(avroCodec.encode(reply),
+        EsthesisCommandReplyMessage.class));
+  }
+
+  @Test
+  void encodeIntoBuffers() {
+    EsthesisDataMessage first = dataMessage("cpu load=1 2024-01-01T00:00:00Z");
+    EsthesisDataMessage second = dataMessage("mem free=2,used=3 2024-01-01T00:00:01Z");
+    for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(1024),
+        ByteBuffer.allocateDirect(1024)}) {
+      int written = avroCodec.encode(first, buffer);
+      assertEquals(avroCodec.encode(first).length, written);
+      avroCodec.encode(second, buffer);
+      buffer.flip();
+
+      EsthesisDataMessage reuse = new EsthesisDataMessage();
+      assertSame(reuse, avroCodec.decode(buffer, EsthesisDataMessage.class, reuse));
+      assertEquals(first, reuse);
+      assertEquals(second, avroCodec.decode(buffer, EsthesisDataMessage.class, reuse));
+      assertEquals(0, buffer.remaining());
+    }
+  }
+
+  @Test
+  void decodeRegionIntoReusedRecord() {
+    EsthesisDataMessage message = dataMessage("cpu load=1 2024-01-01T00:00:00Z");
+    byte[] bytes = avroCodec.encode(message);
+    byte[] padded = new byte[bytes.length + 4];
+    System.arraycopy(bytes, 0, padded, 2, bytes.length);
+    EsthesisDataMessage reuse = dataMessage("old a=1,b=2,c=3");
+    assertSame(reuse, avroCodec.decode(padded, 2, bytes.length, EsthesisDataMessage.class,
+        reuse));
+    assertEquals(message, reuse);
+  }
+
+  @Test
+  void rejectOverflowAndMalformedInput() {
+    EsthesisDataMessage message = dataMessage("cpu load=1");
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    buffer.position(2);
+    assertThrows(BufferOverflowException.class, () -> avroCodec.encode(message, buffer));
+    assertEquals(2, buffer.position());
+
+    byte[] bytes = avroCodec.encode(message);
+    byte[] truncated = new byte[bytes.length / 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertThrows(QProcessingException.class,
+        () -> avroCodec.decode(truncated, EsthesisDataMessage.class));
+    assertArrayEquals(bytes, avroCodec.encode(message));
+  }
+
+  @Test
+  void encodeSingleObjects() throws Exception {
+    EsthesisDataMessage message = dataMessage("cpu load=1.5,temp=20 2024-01-01T00:00:00Z");
+    byte[] bytes = avroCodec.encodeSingleObject(message);
+    assertArrayEquals(message.toByteBuffer().array(), bytes);
+    assertEquals(message, avroCodec.decodeSingleObject(bytes, EsthesisDataMessage.class));
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+    assertEquals(bytes.length, avroCodec.encodeSingleObject(message, buffer));
+    buffer.flip();
+    EsthesisDataMessage reuse = new EsthesisDataMessage();
+    assertSame(reuse, avroCodec.decodeSingleObject(buffer, EsthesisDataMessage.class, reuse));
+    assertEquals(message, reuse);
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  void decodeSingleObjectsOfOlderSchemas() throws Exception {
+    // A previous version of the data message schema, predating the epoch-based timestamps.
+    Schema current = EsthesisDataMessage.getClassSchema();
+    List<Schema.Field> fields = new ArrayList<>();
+    for (Schema.Field field : current.getFields()) {
+      if (!field.name().equals("seenAtMicros")) {
+        fields.add(new Schema.Field(field, field.schema()));
+      }
+    }
+    Schema previous = Schema.createRecord(current.getName(), null, current.getNamespace(), false,
+        fields);
+
+    EsthesisDataMessage message = dataMessage("cpu load=1 2024-01-01T00:00:00Z");
+    message.setSeenAt("2024-01-01T00:00:01Z");
+    byte[] bytes = new BinaryMessageEncoder<EsthesisDataMessage>(
+        SpecificData.getForClass(EsthesisDataMessage.class), previous)
+        .encode(message).array();
+
+    assertThrows(QProcessingException.class,
+        () -> avroCodec.decodeSingleObject(bytes, EsthesisDataMessage.class));
+    avroCodec.registerWriterSchema(previous);
+    EsthesisDataMessage decoded = avroCodec.decodeSingleObject(bytes, EsthesisDataMessage.class);
+    assertEquals(message.getSeenAt(), decoded.getSeenAt());
+    assertNull(decoded.getSeenAtMicros());
+    assertEquals(message.getPayload(), decoded.getPayload());
+
+    // Writer schemas are known only to the codec they were registered with.
+    assertThrows(QProcessingException.class,
+        () -> new AvroCodec().decodeSingleObject(bytes, EsthesisDataMessage.class));
+  }
+
+  @Test
+  void decodeSingleObjectsOfGeneratedTypes() throws Exception {
+    EsthesisDataMessage message = dataMessage("cpu load=1 2024-01-01T00:00:00Z");
+    assertEquals(message, EsthesisDataMessage.fromByteBuffer(
+        ByteBuffer.wrap(avroCodec.encodeSingleObject(message))));
+
+    byte[] bytes = EsthesisDataMessage.getEncoder().encode(message).array();
+    byte[] padded = new byte[bytes.length + 4];
+    System.arraycopy(bytes, 0, padded, 2, bytes.length);
+    assertEquals(message, avroCodec.decodeSingleObject(padded, 2, bytes.length,
+        EsthesisDataMessage.class, null));
+  }
+
+  @Test
+  void recoverFromInvalidRecords() {
+    EsthesisDataMessage valid = dataMessage("cpu load=1 2024-01-01T00:00:00Z");
+    // Fields preceding the channel are buffered by the encoder when the channel is found missing.
+    EsthesisDataMessage invalid = dataMessage("mem free=2 2024-01-01T00:00:00Z");
+    invalid.setChannel(null);
+
+    assertThrows(QProcessingException.class, () -> avroCodec.encode(invalid));
+    assertEquals(valid, avroCodec.decode(avroCodec.encode(valid), EsthesisDataMessage.class));
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    buffer.position(3);
+    assertThrows(QProcessingException.class, () -> avroCodec.encode(invalid, buffer));
+    assertEquals(3, buffer.position());
+    assertThrows(QProcessingException.class, () -> avroCodec.encodeSingleObject(invalid, buffer));
+    assertEquals(3, buffer.position());
+
+    avroCodec.encode(valid, buffer);
+    buffer.flip().position(3);
+    assertEquals(valid, avroCodec.decode(buffer, EsthesisDataMessage.class, null));
+  }
+
+  @Test
+  void rejectMalformedSingleObjects() {
+    EsthesisDataMessage message = dataMessage("cpu load=1");
+    assertThrows(QProcessingException.class,
+        () -> avroCodec.decodeSingleObject(avroCodec.encode(message), EsthesisDataMessage.class));
+
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    assertThrows(BufferOverflowException.class,
+        () -> avroCodec.encodeSingleObject(message, buffer));
+    assertEquals(0, buffer.position());
+  }
+}
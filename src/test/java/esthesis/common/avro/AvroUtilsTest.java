@@ -3,13 +3,26 @@ package esthesis.common.avro;
 import esthesis.common.exception.QMismatchException;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Slf4j
 @QuarkusTest
@@ -28,7 +41,9 @@ class AvroUtilsTest {
             "net ip1='primary 192.168.1.1'",
             "net ip1='primary 192.168.1.1' 2022-01-01T01:02:03Z",
             "net ip1='primary 192.168.1.1',ip2='secondary 10.250.1.1'",
-            "net ip1='primary 192.168.1.1',ip2='secondary 10.250.1.1' 2022-01-01T01:02:03Z"
+            "net ip1='primary 192.168.1.1',ip2='secondary 10.250.1.1' 2022-01-01T01:02:03Z",
+            "cpu  load=1   2022-01-01T01:02:03Z",
+            "net msg='a,b=c d'"
     })
     void parseValidPayloads(String input) {
         log.info("Testing valid payload: {}", input);
@@ -59,7 +74,12 @@ class AvroUtilsTest {
             "cpu load=1 2022-01-01T01:02:03",
             "cpu load='1",
             "!@#$%^&*()",
-            "cpu !@#$%^&*()"
+            "cpu !@#$%^&*()",
+            "# cpu load=1",
+            "cpu load=1,",
+            "cpu =1",
+            "cpu load=1=2",
+            "cpu load=1 2022-01-01T01:02:03Z extra"
     })
     void parseInvalidPayloads(String input) {
         log.info("Testing invalid payload: {}", input);
@@ -67,4 +87,425 @@ class AvroUtilsTest {
                 "Expected QMismatchException for input: " + input);
     }
 
+    @Test
+    void parsePayloadFields() {
+        PayloadData payloadData = avroUtils.parsePayload(
+                "net ip1='primary 192.168.1.1',port=8080i 2022-01-01T01:02:03Z");
+        assertEquals("net", payloadData.getCategory());
+        assertEquals("2022-01-01T01:02:03Z", payloadData.getTimestamp());
+        assertEquals(2, payloadData.getValues().size());
+        assertEquals("ip1", payloadData.getValues().get(0).getName());
+        assertEquals("primary 192.168.1.1", payloadData.getValues().get(0).getValue());
+        assertEquals(ValueTypeEnum.STRING, payloadData.getValues().get(0).getValueType());
+        assertEquals("port", payloadData.getValues().get(1).getName());
+        assertEquals("8080", payloadData.getValues().get(1).getValue());
+        assertEquals(ValueTypeEnum.INTEGER, payloadData.getValues().get(1).getValueType());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "cpu load=1,temperature=20 2022-01-01T01:02:03Z",
+            "net ip1='primary 192.168.1.1',ip2='secondary 10.250.1.1'",
+            "θερμοκρασία αίθουσα='ζεστή ημέρα',τιμή=21.5d 2022-01-01T01:02:03Z"
+    })
+    void parseBytePayloads(String input) {
+        PayloadData expected = avroUtils.parsePayload(input);
+        byte[] bytes = ("xx" + input + "yy").getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length - 4;
+
+        PayloadData fromArray = avroUtils.parsePayload(bytes, 2, length);
+        assertEquals(expected.getCategory(), fromArray.getCategory());
+        assertEquals(expected.getValues(), fromArray.getValues());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).position(2)
+                .limit(2 + length);
+        PayloadData fromBuffer = avroUtils.parsePayload(direct);
+        assertEquals(expected.getCategory(), fromBuffer.getCategory());
+        assertEquals(expected.getValues(), fromBuffer.getValues());
+        assertEquals(2, direct.position());
+    }
+
+    @Test
+    void keepInvalidLinesInExceptionsAfterBufferReuse() {
+        byte[] bytes = "cpu load=".getBytes(StandardCharsets.UTF_8);
+        QMismatchException fromArray = assertThrows(QMismatchException.class,
+                () -> avroUtils.parsePayload(bytes, 0, bytes.length));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        QMismatchException fromBuffer = assertThrows(QMismatchException.class,
+                () -> avroUtils.parsePayload(direct));
+        QMismatchException reply = assertThrows(QMismatchException.class,
+                () -> avroUtils.parseCommandReplyLP(bytes, 0, 3, "dev1", "app", "topic"));
+
+        // Reuse the buffers before the messages are formatted.
+        byte[] other = "xxxxxxxxx".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(other, 0, bytes, 0, bytes.length);
+        direct.clear().put(other);
+
+        assertTrue(fromArray.getMessage().contains("'cpu load='"), fromArray.getMessage());
+        assertTrue(fromBuffer.getMessage().contains("'cpu load='"), fromBuffer.getMessage());
+        assertTrue(reply.getMessage().contains("'cpu'"), reply.getMessage());
+    }
+
+    @Test
+    void abbreviateLongInvalidLinesInExceptions() {
+        byte[] bytes = ("cpu load=" + "1".repeat(10_000) + " invalid")
+                .getBytes(StandardCharsets.UTF_8);
+        QMismatchException e = assertThrows(QMismatchException.class,
+                () -> avroUtils.parsePayload(bytes, 0, bytes.length));
+        assertTrue(e.getMessage().contains("'cpu load=111"), e.getMessage());
+        assertTrue(e.getMessage().contains("...'"), e.getMessage());
+        assertTrue(e.getMessage().length() < 5000, e.getMessage());
+    }
+
+    @Test
+    void parseMultiLinePayloads() throws IOException {
+        String payload = """
+                # A comment line
+                cpu load=1,temperature=20 2022-01-01T01:02:03Z
+
+                cpu load=
+                net ip1='primary 192.168.1.1'\r
+                cpu load=1 2022-01-01
+                cpu load=2""";
+
+        List<ELPBatchResult> results = List.of(
+                avroUtils.parsePayloads(payload),
+                avroUtils.parsePayloads(new StringReader(payload)),
+                avroUtils.parsePayloads(new ByteArrayInputStream(
+                        payload.getBytes(StandardCharsets.UTF_8))));
+        for (ELPBatchResult result : results) {
+            assertEquals(3, result.getPayloads().size());
+            assertEquals("net", result.getPayloads().get(1).getCategory());
+            assertEquals("primary 192.168.1.1",
+                    result.getPayloads().get(1).getValues().get(0).getValue());
+            assertEquals("2", result.getPayloads().get(2).getValues().get(0).getValue());
+            assertEquals(2, result.getSkippedLines());
+            assertEquals(2, result.getErrors().size());
+            assertEquals(4, result.getErrors().get(0).getLineNumber());
+            assertEquals(4, result.getErrors().get(0).getOffset());
+            assertEquals(6, result.getErrors().get(1).getLineNumber());
+            assertEquals(11, result.getErrors().get(1).getOffset());
+            assertEquals(7, result.getLineCount());
+        }
+    }
+
+    @Test
+    void parseMultiLinePayloadsFromStreamLargerThanBuffer() throws IOException {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            payload.append("cpu load=").append(i).append(",name='")
+                    .append("x".repeat(i % 50)).append("'\n");
+        }
+        payload.append("cpu long='").append("y".repeat(20000)).append("'\n");
+
+        ELPBatchResult result = avroUtils.parsePayloads(new ByteArrayInputStream(
+                payload.toString().getBytes(StandardCharsets.UTF_8)));
+        assertTrue(result.isSuccessful());
+        assertEquals(2001, result.getPayloads().size());
+        assertEquals("1999", result.getPayloads().get(1999).getValues().get(0).getValue());
+        assertEquals(20000, result.getPayloads().get(2000).getValues().get(0).getValue().length());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "12bi|12|BIG_INTEGER",
+            "3.1bd|3.1|BIG_DECIMAL",
+            "12b|12|BYTE",
+            "12s|12|SHORT",
+            "12i|12|INTEGER",
+            "12l|12|LONG",
+            "1.5f|1.5|FLOAT",
+            "1.5d|1.5|DOUBLE",
+            "'1.5d'|1.5d|STRING",
+            "TRUE|TRUE|BOOLEAN",
+            "1.5|1.5|FLOAT",
+            "40000|40000|INTEGER"
+    })
+    void parseValueHints(String value, String expectedValue, ValueTypeEnum expectedType) {
+        ValueData valueData = avroUtils.parsePayload("cpu v=" + value).getValues().get(0);
+        assertEquals(expectedValue, valueData.getValue());
+        assertEquals(expectedType, valueData.getValueType());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "12bi|12|BIG_INTEGER",
+            "12i|12|INTEGER",
+            "1.5d|1.5|DOUBLE",
+            "'1.5d'|1.5d|STRING",
+            "TRUE|TRUE|BOOLEAN",
+            "40000|40000|INTEGER",
+            "1e400|1e400|UNKNOWN"
+    })
+    void parseLazyValueTypes(String value, String expectedValue, ValueTypeEnum expectedType) {
+        AvroUtils lazyAvroUtils = new AvroUtils();
+        lazyAvroUtils.lazyValueTypes = true;
+        PayloadData payloadData = lazyAvroUtils.parsePayload("cpu v=" + value);
+        ValueData valueData = payloadData.getValues().get(0);
+        assertEquals(value, valueData.getValue());
+        assertEquals(ValueTypeEnum.UNKNOWN, valueData.getValueType());
+        assertEquals(expectedType, ValueDataResolver.getValueType(valueData));
+
+        ValueDataResolver.resolve(payloadData);
+        assertEquals(expectedValue, valueData.getValue());
+        assertEquals(expectedType, valueData.getValueType());
+        ValueData eager = ValueDataResolver.resolve(
+                avroUtils.parsePayload("cpu v=" + value).getValues().get(0));
+        assertEquals(eager.getValue(), valueData.getValue());
+        assertEquals(eager.getValueType(), valueData.getValueType());
+    }
+
+    @Test
+    void keepExplicitUnknownValueTypes() {
+        AvroUtils lazyAvroUtils = new AvroUtils();
+        lazyAvroUtils.lazyValueTypes = true;
+        PayloadData payloadData = lazyAvroUtils.parsePayload("cpu v=12i");
+        assertTrue(ValueDataResolver.isUnresolved(payloadData.getValues().get(0)));
+
+        // An entry stating the UNKNOWN type explicitly, converted into the same target.
+        lazyAvroUtils.toPayload(ELPEntry.builder().category("cpu")
+                .measurement("v", "12i", ValueTypeEnum.UNKNOWN).build(), payloadData);
+        ValueData explicit = payloadData.getValues().get(0);
+        assertFalse(ValueDataResolver.isUnresolved(explicit));
+        assertEquals(ValueTypeEnum.UNKNOWN, ValueDataResolver.getValueType(explicit));
+        assertEquals("12i", ValueDataResolver.resolve(explicit).getValue());
+        assertEquals(ValueTypeEnum.UNKNOWN, explicit.getValueType());
+
+        // A value of UNKNOWN type received from another component.
+        ValueData received = new ValueData("v", "12i", ValueTypeEnum.UNKNOWN);
+        assertEquals(ValueTypeEnum.UNKNOWN, ValueDataResolver.getValueType(received));
+        assertEquals(ValueTypeEnum.UNKNOWN, ValueDataResolver.resolve(received).getValueType());
+    }
+
+    @Test
+    void internNames() {
+        PayloadData first = avroUtils.parsePayload("cpu load=1,temp=2");
+        byte[] bytes = "cpu load=3".getBytes(StandardCharsets.UTF_8);
+        PayloadData second = avroUtils.parsePayload(bytes, 0, bytes.length);
+        assertSame(first.getCategory(), second.getCategory());
+        assertSame(first.getValues().get(0).getName(), second.getValues().get(0).getName());
+    }
+
+    @Test
+    void internHardwareIdsApartFromNames() {
+        AvroUtils smallAvroUtils = new AvroUtils();
+        smallAvroUtils.maxNames = 4;
+        smallAvroUtils.maxHardwareIds = 8;
+        for (int i = 0; i < 100; i++) {
+            smallAvroUtils.parseCommandReplyLP("c" + i + " s ok", "device-" + i, "app", "topic");
+        }
+        smallAvroUtils.parsePayload("cpu load=1");
+
+        assertEquals(8, smallAvroUtils.getHardwareIdTable().size());
+        assertEquals(2, smallAvroUtils.getNameTable().size());
+        assertTrue(smallAvroUtils.getNameTable().getId("load") != SymbolTable.NO_ID);
+    }
+
+    @Test
+    void parseIntoReusedTarget() {
+        PayloadData target = new PayloadData();
+        avroUtils.parsePayload("cpu load=1,temp=2,fan=3 2024-01-01T00:00:00Z", target);
+        ValueData recycled = target.getValues().get(0);
+
+        String line = "mem used=4i,free='5' 2024-01-02T00:00:00Z";
+        assertSame(target, avroUtils.parsePayload(line, target));
+        assertEquals(avroUtils.parsePayload(line), target);
+        assertSame(recycled, target.getValues().get(0));
+        assertEquals(2, target.getValues().size());
+
+        assertThrows(QMismatchException.class, () -> avroUtils.parsePayload("mem", target));
+        assertEquals("mem", target.getCategory());
+        assertEquals(2, target.getValues().size());
+
+        byte[] bytes = "disk used=7".getBytes(StandardCharsets.UTF_8);
+        avroUtils.parsePayload(bytes, 0, bytes.length, target);
+        assertEquals(avroUtils.parsePayload("disk used=7").getValues(), target.getValues());
+    }
+
+    @Test
+    void recyclePooledPayloads() {
+        PayloadDataPool pool = new PayloadDataPool(1);
+        PayloadData first = avroUtils.parsePayload("cpu load=1", pool.acquire());
+        pool.release(first);
+        pool.release(new PayloadData());
+        assertSame(first, pool.acquire());
+        assertNotNull(pool.acquire());
+    }
+
+    @Test
+    void parseEpochTimestamps() {
+        PayloadData payloadData = avroUtils.parsePayload("cpu load=1 2024-01-15T10:15:30.123456Z");
+        assertEquals(Instant.parse("2024-01-15T10:15:30.123456Z"),
+                payloadData.getTimestampMicros());
+        assertEquals("2024-01-15T10:15:30.123456Z", payloadData.getTimestamp());
+
+        payloadData = avroUtils.parsePayload("cpu load=1");
+        assertEquals(Instant.parse(payloadData.getTimestamp()), payloadData.getTimestampMicros());
+
+        AvroUtils epochOnlyAvroUtils = new AvroUtils();
+        epochOnlyAvroUtils.omitStringTimestamps = true;
+        payloadData = epochOnlyAvroUtils.parsePayload("cpu load=1 2024-01-15T10:15:30Z");
+        assertNull(payloadData.getTimestamp());
+        assertEquals(Instant.parse("2024-01-15T10:15:30Z"),
+                MessageTimestamps.getTimestamp(payloadData));
+
+        payloadData.setTimestampMicros(null);
+        payloadData.setTimestamp("2024-01-15T10:15:31Z");
+        assertEquals(Instant.parse("2024-01-15T10:15:31Z"),
+                MessageTimestamps.getTimestamp(payloadData));
+
+        EsthesisCommandReplyMessage reply = epochOnlyAvroUtils.parseCommandReplyLP("abc s ok",
+                "dev1", "app", "topic");
+        assertNull(reply.getSeenAt());
+        assertNotNull(MessageTimestamps.getSeenAt(reply));
+        assertEquals(1_705_313_730_000_001L, MessageTimestamps.toEpochMicros(
+                Instant.parse("2024-01-15T10:15:30.000001999Z")));
+    }
+
+    @Test
+    void tryParsePayloads() {
+        ParseResult<PayloadData> success = avroUtils.tryParsePayload("cpu load=1.5");
+        assertTrue(success.isSuccess());
+        assertEquals("1.5", success.getValueOrNull().getValues().get(0).getValue());
+
+        ParseResult<PayloadData> failure = avroUtils.tryParsePayload("cpu load=1.5 abc");
+        assertFalse(failure.isSuccess());
+        assertNull(failure.getValueOrNull());
+        ParseResult.Failure<PayloadData> error = (ParseResult.Failure<PayloadData>) failure;
+        assertEquals(ELPParseError.INVALID_TIMESTAMP, error.error());
+
+        byte[] bytes = "cpu load='x".getBytes(StandardCharsets.UTF_8);
+        ParseResult<PayloadData> unterminated = avroUtils.tryParsePayload(bytes, 0, bytes.length);
+        assertEquals(ELPParseError.UNTERMINATED_QUOTE,
+                ((ParseResult.Failure<PayloadData>) unterminated).error());
+    }
+
+    @Test
+    void tryParseCommandReplies() {
+        ParseResult<EsthesisCommandReplyMessage> success =
+                avroUtils.tryParseCommandReplyLP("abc s done ok", "dev1", "app", "topic");
+        assertTrue(success.isSuccess());
+        assertEquals("abc", success.getValueOrNull().getCorrelationId());
+        assertEquals(ReplyType.s, success.getValueOrNull().getType());
+        assertEquals("done ok", success.getValueOrNull().getPayload());
+        assertEquals("", avroUtils.parseCommandReplyLP("abc f ", "dev1", "app", "topic")
+                .getPayload());
+
+        assertEquals(ELPParseError.MISSING_CORRELATION_ID, replyError(" s done"));
+        assertEquals(ELPParseError.INVALID_REPLY_TYPE, replyError("abc x done"));
+        assertEquals(ELPParseError.INVALID_REPLY_TYPE, replyError("abc "));
+        assertEquals(ELPParseError.MISSING_REPLY_PAYLOAD, replyError("abc s"));
+        assertThrows(QMismatchException.class,
+                () -> avroUtils.parseCommandReplyLP("abc", "dev1", "app", "topic"));
+    }
+
+    @Test
+    void parseCommandRepliesFromBytes() {
+        byte[] bytes = "xxabc s résumé okyy".getBytes(StandardCharsets.UTF_8);
+        EsthesisCommandReplyMessage reply = avroUtils.parseCommandReplyLP(bytes, 2,
+                bytes.length - 4, "dev1", "app", "topic");
+        assertEquals("abc", reply.getCorrelationId());
+        assertEquals(ReplyType.s, reply.getType());
+        assertEquals("résumé ok", reply.getPayload());
+        assertThrows(QMismatchException.class, () -> avroUtils.parseCommandReplyLP(bytes, 0, 2,
+                "dev1", "app", "topic"));
+
+        List<ParseResult<EsthesisCommandReplyMessage>> results = avroUtils.tryParseCommandReplies(
+                List.of("a s ok".getBytes(StandardCharsets.UTF_8),
+                        "b x".getBytes(StandardCharsets.UTF_8),
+                        "c f failed".getBytes(StandardCharsets.UTF_8)),
+                List.of("dev1", "dev2", "dev3"), List.of("t1", "t2", "t3"), "app");
+        assertEquals(3, results.size());
+        assertEquals("ok", results.get(0).getValueOrNull().getPayload());
+        assertEquals(ELPParseError.INVALID_REPLY_TYPE,
+                ((ParseResult.Failure<EsthesisCommandReplyMessage>) results.get(1)).error());
+        EsthesisCommandReplyMessage failed = results.get(2).getValueOrNull();
+        assertEquals("dev3", failed.getHardwareId());
+        assertEquals("t3", failed.getChannel());
+        assertEquals(ReplyType.f, failed.getType());
+        assertEquals(results.get(0).getValueOrNull().getSeenAtMicros(), failed.getSeenAtMicros());
+    }
+
+    private ELPParseError replyError(String body) {
+        return ((ParseResult.Failure<EsthesisCommandReplyMessage>) avroUtils.tryParseCommandReplyLP(
+                body, "dev1", "app", "topic")).error();
+    }
+
+    @Test
+    void convertEntries() {
+        Instant date = Instant.parse("2022-10-10T23:59:59.123456Z");
+        ELPEntry entry = ELPEntry.builder()
+                .category("modbus")
+                .measurement("voltage", "230.5f")
+                .measurement("label", "'line 1'")
+                .measurement("count", 42)
+                .measurement("on", true)
+                .measurement("raw", "0012", ValueTypeEnum.STRING)
+                .date(date)
+                .build();
+        StringBuilder line = new StringBuilder();
+        try {
+            new ELPWriter().write(entry, line);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        PayloadData payload = avroUtils.toPayload(entry);
+        assertEquals(avroUtils.parsePayload(line.toString()), payload);
+        assertEquals(List.of(new ValueData("voltage", "230.5", ValueTypeEnum.FLOAT),
+                new ValueData("label", "line 1", ValueTypeEnum.STRING),
+                new ValueData("count", "42", ValueTypeEnum.LONG),
+                new ValueData("on", "true", ValueTypeEnum.BOOLEAN),
+                new ValueData("raw", "0012", ValueTypeEnum.STRING)), payload.getValues());
+        assertSame(avroUtils.parsePayload("modbus voltage=1").getValues().get(0).getName(),
+                payload.getValues().get(0).getName());
+
+        EsthesisDataMessage message = avroUtils.toDataMessage(entry, "dev1", "gateway",
+                MessageTypeEnum.T, "telemetry");
+        assertEquals("dev1", message.getHardwareId());
+        assertNotNull(message.getSeenAtMicros());
+        assertEquals(date, MessageTimestamps.getTimestamp(message.getPayload()));
+
+        assertThrows(QMismatchException.class, () -> avroUtils.toPayload(
+                ELPEntry.builder().category("modbus").build()));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "abc|INTEGER",
+            "1.5|INTEGER",
+            "300|BYTE",
+            "40000|SHORT",
+            "3000000000|INTEGER",
+            "12345678901234567890|LONG",
+            "abc|DOUBLE",
+            "true|FLOAT",
+            "yes|BOOLEAN",
+            "'quoted'|STRING"
+    })
+    void rejectInvalidTypedEntryValues(String value, ValueTypeEnum valueType) {
+        ELPEntry entry = ELPEntry.builder().category("modbus").measurement("x", value, valueType)
+                .build();
+        assertThrows(QMismatchException.class, () -> avroUtils.toPayload(entry));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "5|INTEGER",
+            "-40000|LONG",
+            "12345678901234567890|BIG_INTEGER",
+            "42|DOUBLE",
+            "1.5|FLOAT",
+            "NaN|DOUBLE",
+            "1.50|BIG_DECIMAL",
+            "FALSE|BOOLEAN",
+            "it's|STRING",
+            "'1m'|UNKNOWN"
+    })
+    void acceptValidTypedEntryValues(String value, ValueTypeEnum valueType) {
+        ELPEntry entry = ELPEntry.builder().category("modbus").measurement("x", value, valueType)
+                .build();
+        assertEquals(new ValueData("x", value, valueType),
+                avroUtils.toPayload(entry).getValues().get(0));
+    }
 }
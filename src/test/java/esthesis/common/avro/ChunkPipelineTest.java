@@ -0,0 +1,120 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ChunkPipelineTest {
+
+  @Test
+  void handOverInOrderWithinWindow() throws IOException {
+    int parallelism = 4;
+    AtomicInteger handedOver = new AtomicInteger();
+    AtomicInteger maxReadAhead = new AtomicInteger();
+    List<Integer> items = new ArrayList<>();
+
+    ChunkPipeline.<Integer>run(200, parallelism, true, (chunk, sink) -> {
+      maxReadAhead.accumulateAndGet(chunk - handedOver.get(), Math::max);
+      sink.accept(chunk * 2);
+      sink.accept(chunk * 2 + 1);
+    }, item -> {
+      items.add(item);
+      if (item % 2 == 1) {
+        // Keep the consumer slower than the readers.
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        handedOver.incrementAndGet();
+      }
+    });
+
+    assertEquals(IntStream.range(0, 400).boxed().toList(), items);
+    assertTrue(maxReadAhead.get() < parallelism * ChunkPipeline.WINDOW_PER_THREAD,
+        "Read ahead " + maxReadAhead.get() + " chunks.");
+  }
+
+  @Test
+  void handOverUnordered() throws IOException {
+    List<Integer> items = Collections.synchronizedList(new ArrayList<>());
+    ChunkPipeline.<Integer>run(100, 4, false, (chunk, sink) -> sink.accept(chunk), items::add);
+
+    assertEquals(IntStream.range(0, 100).boxed().toList(), items.stream().sorted().toList());
+  }
+
+  @Test
+  void stopOnFailures() {
+    IOException readFailure = assertThrows(IOException.class,
+        () -> ChunkPipeline.<Integer>run(100, 4, true, (chunk, sink) -> {
+          if (chunk == 50) {
+            throw new IOException("Chunk 50.");
+          }
+          sink.accept(chunk);
+        }, item -> {
+        }));
+    assertEquals("Chunk 50.", readFailure.getMessage());
+
+    List<Integer> items = Collections.synchronizedList(new ArrayList<>());
+    IllegalStateException consumerFailure = assertThrows(IllegalStateException.class,
+        () -> ChunkPipeline.<Integer>run(100, 4, true, (chunk, sink) -> sink.accept(chunk),
+            item -> {
+              if (item == 10) {
+                throw new IllegalStateException("Item 10.");
+              }
+              items.add(item);
+            }));
+    assertEquals("Item 10.", consumerFailure.getMessage());
+    assertEquals(IntStream.range(0, 10).boxed().toList(), items);
+  }
+
+  @Test
+  void stopOnInterrupt() throws InterruptedException {
+    CountDownLatch reading = new CountDownLatch(1);
+    AtomicBoolean returned = new AtomicBoolean();
+    AtomicInteger lateItems = new AtomicInteger();
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread runner = new Thread(() -> {
+      try {
+        ChunkPipeline.<Integer>run(100, 2, false, (chunk, sink) -> {
+          reading.countDown();
+          for (int i = 0; i < 1000; i++) {
+            // Keep reading slowly, without ending on interrupts.
+            LockSupport.parkNanos(100_000);
+            sink.accept(i);
+          }
+        }, item -> {
+          if (returned.get()) {
+            lateItems.incrementAndGet();
+          }
+        });
+      } catch (Throwable t) {
+        thrown.set(t);
+      }
+      returned.set(true);
+    });
+
+    runner.start();
+    reading.await();
+    runner.interrupt();
+    runner.join();
+    Thread.sleep(200);
+
+    assertInstanceOf(InterruptedIOException.class, thrown.get());
+    assertEquals(0, lateItems.get());
+  }
+}
@@ -0,0 +1,77 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CommandTemplateTest {
+
+  @Inject
+  AvroUtils avroUtils;
+
+  private static EsthesisCommandRequestMessage request(String id, String command,
+      String arguments) {
+    return EsthesisCommandRequestMessage.newBuilder()
+        .setId(id)
+        .setHardwareId("device1")
+        .setCommandType(CommandType.e)
+        .setExecutionType(ExecutionType.s)
+        .setCommand(command)
+        .setArguments(arguments)
+        .setCreatedAt(null)
+        .build();
+  }
+
+  @Test
+  void writeLinesOfCompiledTemplates() {
+    assertEquals("id1 es ls -la /tmp",
+        avroUtils.commandRequestToLineProtocol(request("id1", "ls", "-la /tmp")));
+    assertEquals("id1 es ls", avroUtils.commandRequestToLineProtocol(request("id1", "ls", null)));
+    assertEquals("id1 es", avroUtils.commandRequestToLineProtocol(request("id1", " ", "-la")));
+
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    for (EsthesisCommandRequestMessage msg : List.of(request("ignored", "ls", "-la /tmp"),
+        request("ignored", "echo", "καλημέρα"), request("ignored", null, null))) {
+      CommandTemplate template = CommandTemplate.compile(msg);
+      for (String id : List.of("0192c3a8-7b1e-7c4d-8e2f-0123456789ab", "id-ä", "")) {
+        msg.setId(id);
+        byte[] expected = avroUtils.commandRequestToLineProtocol(msg)
+            .getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, template.toBytes(id));
+
+        buffer.clear();
+        assertEquals(expected.length, template.write(id, buffer));
+        assertArrayEquals(expected, Arrays.copyOf(buffer.array(), buffer.position()));
+
+        buffer.clear();
+        assertEquals(expected.length, avroUtils.commandRequestToLineProtocol(msg, buffer));
+        assertArrayEquals(expected, Arrays.copyOf(buffer.array(), buffer.position()));
+      }
+    }
+  }
+
+  @Test
+  void leaveBufferUnchangedOnOverflow() {
+    EsthesisCommandRequestMessage msg = request("id1", "ls", "-la /tmp");
+    CommandTemplate template = CommandTemplate.compile(msg);
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.position(4);
+    assertThrows(BufferOverflowException.class, () -> template.write("id1", buffer));
+    assertEquals(4, buffer.position());
+    assertThrows(BufferOverflowException.class, () -> template.write("id-ä", buffer));
+    assertEquals(4, buffer.position());
+    assertThrows(BufferOverflowException.class,
+        () -> avroUtils.commandRequestToLineProtocol(msg, buffer));
+    assertEquals(4, buffer.position());
+  }
+}
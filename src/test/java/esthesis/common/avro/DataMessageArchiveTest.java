@@ -0,0 +1,130 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@QuarkusTest
+class DataMessageArchiveTest {
+
+  @Inject
+  AvroUtils avroUtils;
+
+  @TempDir
+  Path tempDir;
+
+  private EsthesisDataMessage message(int i) {
+    return EsthesisDataMessage.newBuilder().setId("id-" + i)
+        .setHardwareId("device-" + (i % 5)).setSeenBy("test").setType(MessageTypeEnum.T)
+        .setChannel("telemetry").setPayload(avroUtils.parsePayload(
+            "cpu load=" + i + ",temp=" + (i % 40) + " 2024-01-01T00:00:00Z")).build();
+  }
+
+  private List<EsthesisDataMessage> archive(String codec) throws IOException {
+    List<EsthesisDataMessage> messages = new ArrayList<>();
+    try (DataMessageArchiveWriter writer = new DataMessageArchiveWriter(tempDir, codec, 1024,
+        16 * 1024, Duration.ofHours(1))) {
+      for (int i = 0; i < 2000; i++) {
+        EsthesisDataMessage message = message(i);
+        writer.append(message);
+        messages.add(message);
+      }
+    }
+
+    return messages;
+  }
+
+  private long countSegments(String suffix) throws IOException {
+    return countSegments(tempDir, suffix);
+  }
+
+  private long countSegments(Path directory, String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(suffix)).count();
+    }
+  }
+
+  @Test
+  void archiveAndReplayOrdered() throws IOException {
+    List<EsthesisDataMessage> messages = archive("deflate");
+    assertTrue(countSegments(DataMessageArchiveWriter.SEGMENT_SUFFIX) > 1);
+    assertEquals(0, countSegments(DataMessageArchiveWriter.PART_SUFFIX));
+
+    List<EsthesisDataMessage> replayed = new ArrayList<>();
+    long count = new DataMessageArchiveReader(4, 2048).readArchive(tempDir, true,
+        replayed::add);
+    assertEquals(messages.size(), count);
+    assertEquals(messages, replayed);
+  }
+
+  @Test
+  void archiveAndReplayUnordered() throws IOException {
+    List<EsthesisDataMessage> messages = archive("snappy");
+    Set<EsthesisDataMessage> replayed = ConcurrentHashMap.newKeySet();
+    long count = new DataMessageArchiveReader(4, 2048).readArchive(tempDir, false,
+        replayed::add);
+    assertEquals(messages.size(), count);
+    assertEquals(new HashSet<>(messages), replayed);
+  }
+
+  @Test
+  void salvagePartiallyWrittenSegments() throws IOException {
+    List<EsthesisDataMessage> messages = new ArrayList<>();
+    Path crashed = Files.createDirectory(tempDir.resolve("crashed"));
+    try (DataMessageArchiveWriter writer = new DataMessageArchiveWriter(tempDir, "deflate", 1024,
+        1024 * 1024, Duration.ofHours(1))) {
+      for (int i = 0; i < 500; i++) {
+        EsthesisDataMessage message = message(i);
+        writer.append(message);
+        messages.add(message);
+      }
+      writer.flush();
+      writer.append(message(500));
+
+      // Copy the segment as left by a crash, with the block being written at its end.
+      Path part;
+      try (Stream<Path> files = Files.list(tempDir)) {
+        part = files.filter(file -> file.getFileName().toString()
+            .endsWith(DataMessageArchiveWriter.PART_SUFFIX)).findFirst().orElseThrow();
+      }
+      byte[] content = Files.readAllBytes(part);
+      byte[] incompleteBlock = {10, 64, 1, 2, 3};
+      Path copy = crashed.resolve(part.getFileName());
+      Files.write(copy, content);
+      Files.write(copy, incompleteBlock, StandardOpenOption.APPEND);
+    }
+    assertEquals(0, new DataMessageArchiveReader().readArchive(crashed, true, message -> {
+    }));
+
+    new DataMessageArchiveWriter(crashed).close();
+    assertEquals(0, countSegments(crashed, DataMessageArchiveWriter.PART_SUFFIX));
+    assertEquals(1, countSegments(crashed, DataMessageArchiveWriter.SEGMENT_SUFFIX));
+    List<EsthesisDataMessage> replayed = new ArrayList<>();
+    new DataMessageArchiveReader(4, 2048).readArchive(crashed, true, replayed::add);
+    assertEquals(messages, replayed);
+  }
+
+  @Test
+  void discardPartiallyWrittenSegmentsWithoutBlocks() throws IOException {
+    Files.write(tempDir.resolve("0000000000000-000000" + DataMessageArchiveWriter.PART_SUFFIX),
+        new byte[]{'O', 'b', 'j'});
+    new DataMessageArchiveWriter(tempDir).close();
+    assertEquals(0, countSegments(DataMessageArchiveWriter.PART_SUFFIX));
+    assertEquals(0, countSegments(DataMessageArchiveWriter.SEGMENT_SUFFIX));
+  }
+}
@@ -0,0 +1,133 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+@QuarkusTest
+class DataMessageConverterTest {
+
+  @Inject
+  AvroUtils avroUtils;
+
+  private static final String LINE = "m i=12i,l=1234567890123l,f=1.5f,d=2.25,b=True,s='x y',"
+      + "bi=123456789012345678901234567890bi,bd=1.50bd,h=abci 2024-01-01T00:00:00Z";
+
+  private EsthesisDataMessage message() {
+    return message(LINE);
+  }
+
+  private EsthesisDataMessage message(String line) {
+    return EsthesisDataMessage.newBuilder().setId("1").setHardwareId("dev1").setSeenBy("test")
+        .setType(MessageTypeEnum.T).setChannel("telemetry")
+        .setPayload(avroUtils.parsePayload(line)).build();
+  }
+
+  @Test
+  void convertToNativeTypes() {
+    List<esthesis.common.avro.v2.ValueData> values =
+        DataMessageConverter.toV2(message()).getPayload().getValues();
+    assertEquals(12L, values.get(0).getValue());
+    assertEquals(1234567890123L, values.get(1).getValue());
+    assertEquals(1.5d, values.get(2).getValue());
+    assertEquals(2.25d, values.get(3).getValue());
+    assertEquals(Boolean.TRUE, values.get(4).getValue());
+    assertEquals("x y", values.get(5).getValue());
+    assertEquals("123456789012345678901234567890", values.get(6).getValue());
+    assertInstanceOf(esthesis.common.avro.v2.Decimal.class, values.get(7).getValue());
+    assertEquals("abc", values.get(8).getValue());
+    assertEquals(esthesis.common.avro.v2.ValueTypeEnum.INTEGER, values.get(8).getValueType());
+  }
+
+  @Test
+  void convertRoundTrip() throws IOException {
+    EsthesisDataMessage message = message();
+    esthesis.common.avro.v2.EsthesisDataMessage v2 = DataMessageConverter.toV2(message);
+    EsthesisDataMessage v1 = DataMessageConverter.toV1(decode(encode(v2)));
+    List<ValueData> values = v1.getPayload().getValues();
+    assertEquals("12", values.get(0).getValue());
+    assertEquals("1.5", values.get(2).getValue());
+    assertEquals("true", values.get(4).getValue());
+    assertEquals(ValueTypeEnum.BOOLEAN, values.get(4).getValueType());
+    assertEquals("123456789012345678901234567890", values.get(6).getValue());
+    assertEquals("1.5", values.get(7).getValue());
+    assertEquals(ValueTypeEnum.BIG_DECIMAL, values.get(7).getValueType());
+    assertEquals(message.getPayload().getCategory(), v1.getPayload().getCategory());
+    assertEquals(message.getHardwareId(), v1.getHardwareId());
+  }
+
+  @Test
+  void encodeNumbersCompactly() throws IOException {
+    EsthesisDataMessage message = message("m a=1234567890123,b=-9876543210,c=0.123456789012");
+    assertTrue(encode(DataMessageConverter.toV2(message)).length < encode(message).length);
+  }
+
+  @Test
+  void convertBytesToBase64() {
+    esthesis.common.avro.v2.ValueData value = new esthesis.common.avro.v2.ValueData("raw",
+        ByteBuffer.wrap("abc".getBytes(StandardCharsets.UTF_8)),
+        esthesis.common.avro.v2.ValueTypeEnum.BYTES);
+    ValueData v1 = DataMessageConverter.toV1(value);
+    assertEquals("YWJj", v1.getValue());
+    assertEquals(ValueTypeEnum.STRING, v1.getValueType());
+  }
+
+  @Test
+  void convertNonBinaryBytesToString() {
+    esthesis.common.avro.v2.ValueData value = new esthesis.common.avro.v2.ValueData("raw",
+        "abc", esthesis.common.avro.v2.ValueTypeEnum.BYTES);
+    ValueData v1 = DataMessageConverter.toV1(value);
+    assertEquals("abc", v1.getValue());
+    assertEquals(ValueTypeEnum.STRING, v1.getValueType());
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "1e400, DOUBLE, 1e400",
+      "-1e400, DOUBLE, -1e400",
+      "1e39, FLOAT, 1e39",
+      "1e39, DOUBLE, 1.0E39",
+      "Infinity, FLOAT, Infinity",
+      "-Infinity, DOUBLE, -Infinity"
+  })
+  void keepOutOfRangeFloatingPointValues(String text, ValueTypeEnum valueType, String expected) {
+    ValueData value = new ValueData("v", text, valueType);
+    esthesis.common.avro.v2.ValueData v2 = DataMessageConverter.toV2(value);
+    ValueData v1 = DataMessageConverter.toV1(v2);
+    assertEquals(expected, v1.getValue());
+    assertEquals(valueType, v1.getValueType());
+  }
+
+  private static <T extends SpecificRecord> byte[] encode(T record) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<T>(record.getSchema()).write(record, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static esthesis.common.avro.v2.EsthesisDataMessage decode(byte[] bytes)
+      throws IOException {
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, null);
+    return new SpecificDatumReader<>(esthesis.common.avro.v2.EsthesisDataMessage.class)
+        .read(null, decoder);
+  }
+}
@@ -0,0 +1,90 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import esthesis.common.avro.ELPBatchResult.LineError;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@QuarkusTest
+class ELPBulkImporterTest {
+
+  @Inject
+  AvroUtils avroUtils;
+
+  @TempDir
+  Path tempDir;
+
+  private Path createFile() throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      if (i % 1000 == 500) {
+        content.append("cpu load=\n");
+      } else if (i % 1000 == 700) {
+        content.append("# comment\n");
+      } else {
+        content.append("cpu load=").append(i).append("i,name='device ").append(i)
+            .append("' 2022-01-01T01:02:03Z\n");
+      }
+    }
+    Path file = tempDir.resolve("data.elp");
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+
+    return file;
+  }
+
+  @Test
+  void importOrdered() throws IOException {
+    Path file = createFile();
+    ELPBatchResult expected = avroUtils.parsePayloads(Files.readString(file));
+
+    List<PayloadData> payloads = new ArrayList<>();
+    ELPBulkImportResult result = new ELPBulkImporter(avroUtils, 4, 1024)
+        .importFile(file, true, payloads::add);
+
+    assertTrue(result.getChunkCount() > 1);
+    assertEquals(expected.getPayloads(), payloads);
+    assertEquals(expected.getErrors(), result.getErrors());
+    assertEquals(expected.getSkippedLines(), result.getSkippedLines());
+    assertEquals(5000, result.getLineCount());
+  }
+
+  @Test
+  void importUnordered() throws IOException {
+    Path file = createFile();
+    List<PayloadData> payloads = Collections.synchronizedList(new ArrayList<>());
+    ELPBulkImportResult result = new ELPBulkImporter(avroUtils, 4, 1024)
+        .importFile(file, false, payloads::add);
+
+    assertEquals(4990, payloads.size());
+    assertEquals(4990, result.getPayloadCount());
+    assertEquals(5, result.getErrors().size());
+    assertEquals(501, result.getErrors().get(0).getLineNumber());
+    assertEquals(4501, result.getErrors().get(4).getLineNumber());
+  }
+
+  @Test
+  void detailOnlyTheFirstErrors() throws IOException {
+    Path file = createFile();
+    ELPBulkImportResult result = new ELPBulkImporter(avroUtils, 4, 1024, 2)
+        .importFile(file, false, payload -> {
+        });
+
+    assertEquals(5, result.getErrorCount());
+    assertEquals(List.of(501L, 1501L),
+        result.getErrors().stream().map(LineError::getLineNumber).toList());
+    assertFalse(result.isSuccessful());
+    assertEquals(5000, result.getLineCount());
+  }
+}
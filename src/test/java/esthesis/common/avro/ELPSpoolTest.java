@@ -0,0 +1,133 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import esthesis.common.exception.QLimitException;
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@QuarkusTest
+class ELPSpoolTest {
+
+  @TempDir
+  Path tempDir;
+
+  private static List<String> drain(ELPSpool spool) {
+    List<String> lines = new ArrayList<>();
+    for (Utf8CharSequence line = spool.next(); line != null; line = spool.next()) {
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(tempDir)) {
+      return files.filter(file -> file.toString().endsWith(ELPSpool.SEGMENT_SUFFIX)).sorted()
+          .toList();
+    }
+  }
+
+  @Test
+  void appendAndReplay() throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (ELPSpool spool = new ELPSpool(tempDir, 1024)) {
+      for (int i = 0; i < 100; i++) {
+        String line = "cpu load=" + i + ",name='dévice " + i + "' 2024-01-01T00:00:00Z";
+        if (i % 2 == 0) {
+          spool.append(line);
+        } else {
+          byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+          spool.append(bytes, 0, bytes.length);
+        }
+        lines.add(line);
+      }
+      assertTrue(segments().size() > 1);
+      assertEquals(lines, drain(spool));
+      assertTrue(spool.isEmpty());
+
+      spool.rewind();
+      assertEquals(lines, drain(spool));
+      assertThrows(QLimitException.class, () -> spool.append("x".repeat(2000)));
+    }
+  }
+
+  @Test
+  void rejectOversizedLines() throws IOException {
+    try (ELPSpool spool = new ELPSpool(tempDir, 256)) {
+      spool.append("cpu load=1");
+      int segmentCount = segments().size();
+
+      byte[] bytes = "x".repeat(250).getBytes(StandardCharsets.UTF_8);
+      assertThrows(QLimitException.class, () -> spool.append(bytes, 0, bytes.length));
+      assertThrows(QLimitException.class, () -> spool.append("x".repeat(250)));
+      assertThrows(QLimitException.class, () -> spool.append("é".repeat(125)));
+      assertEquals(segmentCount, segments().size());
+
+      // Lines filling a new segment exactly are still accepted.
+      spool.append(bytes, 0, 248);
+      assertEquals(segmentCount + 1, segments().size());
+      assertEquals(List.of("cpu load=1", "x".repeat(248)), drain(spool));
+    }
+  }
+
+  @Test
+  void resumeFromCommittedCursor() throws IOException {
+    try (ELPSpool spool = new ELPSpool(tempDir, 256)) {
+      for (int i = 0; i < 50; i++) {
+        spool.append("cpu load=" + i);
+      }
+      for (int i = 0; i < 30; i++) {
+        spool.next();
+      }
+      spool.commit();
+      spool.next();
+    }
+    int segmentCount = segments().size();
+
+    try (ELPSpool spool = new ELPSpool(tempDir, 256)) {
+      assertEquals("cpu load=30", spool.next().toString());
+      spool.append("cpu load=50");
+      List<String> lines = drain(spool);
+      assertEquals(20, lines.size());
+      assertEquals("cpu load=50", lines.get(19));
+      spool.commit();
+    }
+    assertTrue(segments().size() < segmentCount);
+  }
+
+  @Test
+  void recoverCorruptTail() throws IOException {
+    long position;
+    try (ELPSpool spool = new ELPSpool(tempDir)) {
+      spool.append("cpu load=1");
+      position = spool.append("cpu load=2");
+      spool.append("cpu load=3");
+    }
+    // Corrupt the second record, as if the process stopped while appending it.
+    try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{'X'}), position + 10);
+    }
+
+    try (ELPSpool spool = new ELPSpool(tempDir)) {
+      assertEquals("cpu load=1", spool.next().toString());
+      assertNull(spool.next());
+      spool.append("cpu load=4");
+      assertEquals("cpu load=4", spool.next().toString());
+      assertNull(spool.next());
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@QuarkusTest
+class ELPTimestampsTest {
+
+  private static void assertSameAsInstant(String timestamp) {
+    Instant instant;
+    try {
+      instant = Instant.parse(timestamp);
+    } catch (DateTimeParseException e) {
+      instant = null;
+    }
+    int to = timestamp.length();
+    assertEquals(instant != null, ELPTimestamps.isValid(timestamp, 0, to),
+        "Validation mismatch for timestamp '" + timestamp + "'.");
+    if (instant != null) {
+      assertEquals(instant.toEpochMilli(), ELPTimestamps.toEpochMilli(timestamp, 0, to),
+          "Millis mismatch for timestamp '" + timestamp + "'.");
+      long nanos;
+      try {
+        nanos = Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L),
+            instant.getNano());
+      } catch (ArithmeticException e) {
+        nanos = ELPTimestamps.INVALID;
+      }
+      assertEquals(nanos, ELPTimestamps.toEpochNano(timestamp, 0, to),
+          "Nanos mismatch for timestamp '" + timestamp + "'.");
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "2024-01-15T10:15:30Z", "2024-01-15T10:15:30.1Z", "2024-01-15T10:15:30.123Z",
+      "2024-01-15T10:15:30.123456789Z", "2024-01-15T10:15:30.1234567890Z",
+      "2024-01-15T10:15:30.Z", "2024-01-15t10:15:30z", "2024-01-15T10:15:30+02:00",
+      "2024-02-29T00:00:00Z", "2023-02-29T00:00:00Z", "1900-02-29T00:00:00Z",
+      "2000-02-29T00:00:00Z", "2024-04-31T00:00:00Z", "2024-13-01T00:00:00Z",
+      "2024-00-01T00:00:00Z", "2024-01-00T00:00:00Z", "2024-01-01T24:00:00Z",
+      "2024-01-01T23:60:00Z", "2016-12-31T23:59:60Z", "1969-12-31T23:59:59.999Z",
+      "0000-01-01T00:00:00Z", "9999-12-31T23:59:59.999999999Z", "+10000-01-01T00:00:00Z",
+      "2024-01-15 10:15:30Z", "2024-01-15T10:15Z", "2024-1-15T10:15:30Z", "2024-01-15",
+      "2024-01-15T10:15:30", "2024-01-15T10:15:3aZ", "abc", ""
+  })
+  void validateEdgeCases(String timestamp) {
+    assertSameAsInstant(timestamp);
+  }
+
+  @Test
+  void validateRange() {
+    String line = "cpu load=1 2024-01-15T10:15:30.5Z";
+    assertTrue(ELPTimestamps.isValid(line, 11, line.length()));
+    assertFalse(ELPTimestamps.isValid(line, 10, line.length()));
+    assertEquals(Instant.parse("2024-01-15T10:15:30.5Z").toEpochMilli(),
+        ELPTimestamps.toEpochMilli(line, 11, line.length()));
+  }
+
+  @Test
+  void nanosOutOfRange() {
+    String timestamp = "2300-01-01T00:00:00Z";
+    assertTrue(ELPTimestamps.isValid(timestamp, 0, timestamp.length()));
+    assertEquals(ELPTimestamps.INVALID, ELPTimestamps.toEpochNano(timestamp, 0,
+        timestamp.length()));
+  }
+
+  @Test
+  void validateRandomTimestamps() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      String timestamp = Instant.ofEpochSecond(random.nextLong(-62_167_219_200L, 253_402_300_800L),
+          random.nextInt(1_000_000_000) / (int) Math.pow(10, random.nextInt(10))).toString();
+      if (i % 4 == 0) {
+        char[] chars = timestamp.toCharArray();
+        chars[random.nextInt(chars.length)] = "0123456789-:.TZ"
+            .charAt(random.nextInt(15));
+        timestamp = new String(chars);
+      }
+      assertSameAsInstant(timestamp);
+    }
+  }
+}
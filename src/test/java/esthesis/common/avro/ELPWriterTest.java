@@ -0,0 +1,150 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import esthesis.common.exception.QMismatchException;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class ELPWriterTest {
+
+  // The characters random strings are made of, including the structural characters of eLP.
+  private static final String STRING_CHARS = "ab1 ,='#é€😀";
+
+  @Inject
+  AvroUtils avroUtils;
+
+  private final ELPWriter writer = new ELPWriter();
+
+  @Test
+  void writeEntries() throws IOException {
+    ELPEntry entry = ELPEntry.builder()
+        .category("category")
+        .measurement("name1", "10i")
+        .measurement("name2", "hello world")
+        .measurement("name3", "'quoted, value'")
+        .date(Instant.parse("2022-10-10T23:59:59Z"))
+        .build();
+    StringBuilder line = new StringBuilder();
+    writer.write(entry, line);
+    assertEquals("category name1=10i,name2='hello world',name3='quoted, value' "
+        + "2022-10-10T23:59:59Z", line.toString());
+
+    PayloadData payload = avroUtils.parsePayload(line.toString());
+    assertEquals(List.of(new ValueData("name1", "10", ValueTypeEnum.INTEGER),
+        new ValueData("name2", "hello world", ValueTypeEnum.STRING),
+        new ValueData("name3", "quoted, value", ValueTypeEnum.STRING)), payload.getValues());
+
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    assertEquals(line.length(), writer.write(entry, buffer));
+    assertEquals(line.toString(), new String(buffer.array(), 0, buffer.position(),
+        StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void rejectUnrepresentableEntries() {
+    assertThrows(QMismatchException.class, () -> writer.write(ELPEntry.builder()
+        .category("my category").measurement("name", "1").build(), new StringBuilder()));
+    assertThrows(QMismatchException.class, () -> writer.write(ELPEntry.builder()
+        .category("category").measurement("my name", "1").build(), new StringBuilder()));
+    assertThrows(QMismatchException.class, () -> writer.write(ELPEntry.builder()
+        .category("category").measurement("name", "it's").build(), new StringBuilder()));
+
+    ELPEntry entry = ELPEntry.builder().category("category").measurement("name", "1").build();
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.position(8);
+    assertThrows(BufferOverflowException.class, () -> writer.write(entry, buffer));
+    assertEquals(8, buffer.position());
+  }
+
+  @Test
+  void writtenPayloadsParseBack() throws IOException {
+    Random random = new Random(42);
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    int unrepresentable = 0;
+    for (int i = 0; i < 2000; i++) {
+      PayloadData payload = randomPayload(random);
+      StringBuilder line = new StringBuilder();
+      try {
+        writer.write(payload, line);
+      } catch (QMismatchException e) {
+        // Only strings with unpaired quotes can not be represented.
+        assertTrue(payload.getValues().stream().anyMatch(v -> v.getValue().indexOf('\'') >= 0));
+        unrepresentable++;
+        continue;
+      }
+
+      PayloadData parsed = avroUtils.parsePayload(line.toString());
+      assertEquals(payload.getCategory(), parsed.getCategory(), line::toString);
+      assertEquals(payload.getValues(), parsed.getValues(), line::toString);
+      assertEquals(payload.getTimestampMicros(), parsed.getTimestampMicros(), line::toString);
+
+      buffer.clear();
+      writer.write(payload, buffer);
+      assertArrayEquals(line.toString().getBytes(StandardCharsets.UTF_8),
+          Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+    assertTrue(unrepresentable < 1000);
+  }
+
+  private static PayloadData randomPayload(Random random) {
+    List<ValueData> values = new ArrayList<>();
+    int valueCount = 1 + random.nextInt(6);
+    for (int i = 0; i < valueCount; i++) {
+      values.add(randomValue("v" + i, random));
+    }
+    Instant timestamp = Instant.ofEpochSecond(random.nextInt(2_000_000_000),
+        random.nextInt(1_000_000) * 1_000L);
+
+    return new PayloadData("cat" + random.nextInt(10), null, values, timestamp);
+  }
+
+  private static ValueData randomValue(String name, Random random) {
+    return switch (random.nextInt(8)) {
+      case 0 -> new ValueData(name, randomString(random), ValueTypeEnum.STRING);
+      case 1 -> new ValueData(name, random.nextBoolean() ? "true" : "FALSE",
+          ValueTypeEnum.BOOLEAN);
+      case 2 -> new ValueData(name, Integer.toString(random.nextInt()), ValueTypeEnum.INTEGER);
+      case 3 -> new ValueData(name, Long.toString(random.nextLong()), ValueTypeEnum.LONG);
+      case 4 -> new ValueData(name, Float.toString(random.nextFloat() * 1000),
+          ValueTypeEnum.FLOAT);
+      case 5 -> new ValueData(name, Double.toString(random.nextGaussian() * 1e10),
+          ValueTypeEnum.DOUBLE);
+      case 6 -> new ValueData(name, new BigInteger(100, random).toString(),
+          ValueTypeEnum.BIG_INTEGER);
+      default -> new ValueData(name, new BigDecimal(new BigInteger(100, random), 20).toString(),
+          ValueTypeEnum.BIG_DECIMAL);
+    };
+  }
+
+  private static String randomString(Random random) {
+    StringBuilder value = new StringBuilder();
+    int length = random.nextInt(12);
+    for (int i = 0; i < length; i++) {
+      int index = random.nextInt(STRING_CHARS.length() - 1);
+      // Keep surrogate pairs together.
+      if (Character.isLowSurrogate(STRING_CHARS.charAt(index))) {
+        index--;
+      }
+      value.append(STRING_CHARS, index, Character.isHighSurrogate(STRING_CHARS.charAt(index))
+          ? index + 2 : index + 1);
+    }
+    return value.toString();
+  }
+}
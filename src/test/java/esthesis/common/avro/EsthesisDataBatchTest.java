@@ -0,0 +1,91 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class EsthesisDataBatchTest {
+
+  @Inject
+  AvroUtils avroUtils;
+
+  private List<EsthesisDataMessage> messages() {
+    List<EsthesisDataMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String line = "cpu load=" + (i % 7) + ".5f,temp=" + i + ",ok=true,note='n " + i
+          + "',d=1.50,big=12345678901234567890123 2024-01-01T00:00:" + (10 + i % 50) + ".5Z";
+      messages.add(EsthesisDataMessage.newBuilder().setId("id-" + i)
+          .setHardwareId("device-" + (i % 3)).setSeenBy("dfl-mqtt-client")
+          .setSeenAt("2024-01-01T00:01:00Z").setType(MessageTypeEnum.T)
+          .setChannel("esthesis/telemetry/device-" + (i % 3))
+          .setPayload(avroUtils.parsePayload(line)).build());
+    }
+    return messages;
+  }
+
+  @Test
+  void buildAndIterate() throws IOException {
+    List<EsthesisDataMessage> messages = messages();
+    EsthesisDataBatchBuilder builder = new EsthesisDataBatchBuilder();
+    messages.forEach(builder::add);
+    assertEquals(100, builder.getMessageCount());
+    assertEquals(600, builder.getValueCount());
+    EsthesisDataBatch batch = decode(encode(builder.build()));
+    assertEquals(0, builder.getMessageCount());
+
+    EsthesisDataBatchIterator iterator = new EsthesisDataBatchIterator(batch);
+    for (EsthesisDataMessage original : messages) {
+      EsthesisDataMessage rebuilt = iterator.next();
+      assertEquals(original.getId(), rebuilt.getId());
+      assertEquals(original.getHardwareId(), rebuilt.getHardwareId());
+      assertEquals(original.getChannel(), rebuilt.getChannel());
+      assertEquals(original.getType(), rebuilt.getType());
+      assertEquals(MessageTimestamps.getSeenAt(original), MessageTimestamps.getSeenAt(rebuilt));
+      assertEquals(MessageTimestamps.getTimestamp(original.getPayload()),
+          MessageTimestamps.getTimestamp(rebuilt.getPayload()));
+      assertEquals(original.getPayload().getCategory(), rebuilt.getPayload().getCategory());
+      assertEquals(original.getPayload().getValues(), rebuilt.getPayload().getValues());
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  void encodeCompactly() throws IOException {
+    List<EsthesisDataMessage> messages = messages();
+    EsthesisDataBatchBuilder builder = new EsthesisDataBatchBuilder();
+    int messagesSize = 0;
+    for (EsthesisDataMessage message : messages) {
+      builder.add(message);
+      messagesSize += encode(message).length;
+    }
+    assertTrue(encode(builder.build()).length < messagesSize / 2);
+  }
+
+  private static <T extends SpecificRecord> byte[] encode(T record) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<T>(record.getSchema()).write(record, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static EsthesisDataBatch decode(byte[] bytes) throws IOException {
+    return new SpecificDatumReader<>(EsthesisDataBatch.class).read(null,
+        DecoderFactory.get().binaryDecoder(bytes, null));
+  }
+}
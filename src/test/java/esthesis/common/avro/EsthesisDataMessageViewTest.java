@@ -0,0 +1,76 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import esthesis.common.exception.QProcessingException;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class EsthesisDataMessageViewTest {
+
+  @Inject
+  AvroCodec avroCodec;
+
+  @Inject
+  AvroUtils avroUtils;
+
+  @Test
+  void readFields() {
+    EsthesisDataMessage first = EsthesisDataMessage.newBuilder().setId("1")
+        .setCorrelationId("c1").setHardwareId("dev1").setSeenBy("test")
+        .setSeenAt("2024-01-01T00:00:01Z").setType(MessageTypeEnum.M).setChannel("metadata")
+        .setPayload(avroUtils.parsePayload("cpu load=1.5,temp=20 2024-01-01T00:00:00Z"))
+        .build();
+    EsthesisDataMessage second = EsthesisDataMessage.newBuilder().setId("2")
+        .setHardwareId("dév2").setSeenBy("test").setType(MessageTypeEnum.T)
+        .setChannel("telemetry").setPayload(avroUtils.parsePayload("mem free=2")).build();
+    second.getPayload().setTimestamp(null);
+
+    for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(1024),
+        ByteBuffer.allocateDirect(1024)}) {
+      avroCodec.encode(first, buffer);
+      avroCodec.encode(second, buffer);
+      buffer.flip();
+
+      EsthesisDataMessageView view = new EsthesisDataMessageView().wrap(buffer);
+      assertEquals("1", view.getId().toString());
+      assertEquals("c1", view.getCorrelationId().toString());
+      assertEquals("dev1", view.getHardwareId().toString());
+      assertEquals("test", view.getSeenBy().toString());
+      assertEquals("2024-01-01T00:00:01Z", view.getSeenAt().toString());
+      assertEquals(MessageTypeEnum.M, view.getType());
+      assertEquals("metadata", view.getChannel().toString());
+      assertEquals("cpu", view.getCategory().toString());
+      assertEquals("2024-01-01T00:00:00Z", view.getTimestamp().toString());
+      assertEquals(avroCodec.encode(first).length, view.getEncodedLength());
+      assertEquals(0, buffer.position());
+
+      buffer.position(view.getEncodedLength());
+      view.wrap(buffer);
+      assertNull(view.getCorrelationId());
+      assertEquals("dév2", view.getHardwareId().toString());
+      assertNull(view.getSeenAt());
+      assertEquals(MessageTypeEnum.T, view.getType());
+      assertEquals("mem", view.getCategory().toString());
+      assertNull(view.getTimestamp());
+      assertEquals(buffer.remaining(), view.getEncodedLength());
+    }
+  }
+
+  @Test
+  void rejectTruncatedMessages() {
+    EsthesisDataMessage message = EsthesisDataMessage.newBuilder().setId("1")
+        .setHardwareId("dev1").setSeenBy("test").setType(MessageTypeEnum.T)
+        .setChannel("telemetry").setPayload(avroUtils.parsePayload("cpu load=1")).build();
+    byte[] bytes = avroCodec.encode(message);
+    EsthesisDataMessageView view = new EsthesisDataMessageView();
+    assertThrows(QProcessingException.class, () -> view.wrap(ByteBuffer.wrap(bytes, 0, 10)));
+    view.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 2));
+    assertThrows(QProcessingException.class, view::getEncodedLength);
+  }
+}
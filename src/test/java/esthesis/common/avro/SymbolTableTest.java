@@ -0,0 +1,71 @@
+package esthesis.common.avro;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class SymbolTableTest {
+
+  @Test
+  void internAcrossSources() {
+    SymbolTable symbolTable = new SymbolTable(16);
+    String cpu = symbolTable.intern(new String("cpu"));
+    assertSame(cpu, symbolTable.intern("cpu load=1", 0, 3));
+    assertSame(cpu, symbolTable.intern(new StringBuilder("xcpu"), 1, 4));
+    byte[] bytes = "x cpu".getBytes(StandardCharsets.UTF_8);
+    assertSame(cpu, symbolTable.intern(new ByteCharSequence(bytes, 0, bytes.length), 2, 5));
+    assertEquals(0, symbolTable.getId("cpu"));
+    assertEquals(1, symbolTable.size());
+  }
+
+  @Test
+  void internNonAsciiBytes() {
+    SymbolTable symbolTable = new SymbolTable(16);
+    String name = symbolTable.intern("θερμοκρασία");
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    assertSame(name, symbolTable.intern(new ByteCharSequence(bytes, 0, bytes.length), 0,
+        bytes.length));
+    assertEquals(1, symbolTable.size());
+  }
+
+  @Test
+  void assignStableIds() {
+    SymbolTable symbolTable = new SymbolTable(16);
+    assertEquals(0, symbolTable.idOf("a", 0, 1));
+    assertEquals(1, symbolTable.idOf("b", 0, 1));
+    assertEquals(0, symbolTable.idOf("a", 0, 1));
+    assertEquals("b", symbolTable.getSymbol(1));
+    assertNull(symbolTable.getSymbol(2));
+    assertEquals(SymbolTable.NO_ID, symbolTable.getId("c"));
+    assertEquals(2, symbolTable.size());
+  }
+
+  @Test
+  void stopGrowingWhenFull() {
+    SymbolTable symbolTable = new SymbolTable(2);
+    symbolTable.intern("a");
+    symbolTable.intern("b");
+    String c = new String("c");
+    assertSame(c, symbolTable.intern(c));
+    assertNotSame(symbolTable.intern("xc", 1, 2), symbolTable.intern("xc", 1, 2));
+    assertEquals(SymbolTable.NO_ID, symbolTable.idOf("c", 0, 1));
+    assertEquals(2, symbolTable.size());
+  }
+
+  @Test
+  void internConcurrently() {
+    SymbolTable symbolTable = new SymbolTable(1000);
+    IntStream.range(0, 100_000).parallel().forEach(i -> symbolTable.intern("m" + (i % 500)));
+    assertEquals(500, symbolTable.size());
+    for (int id = 0; id < 500; id++) {
+      assertEquals(id, symbolTable.getId(symbolTable.getSymbol(id)));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package esthesis.common.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import esthesis.common.data.DataUtils.ValueType;
+import io.quarkus.test.junit.QuarkusTest;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@QuarkusTest
+class ValueTypeClassifierTest {
+
+  private static void assertSameAsParsing(String val) {
+    assertEquals(ValueTypeClassifier.classifyByParsing(val), ValueTypeClassifier.classify(val),
+        "Classification mismatch for value '" + val + "'.");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "", " ", "0", "-0", "00", "-00", "1", "-1", "127", "128", "-128", "-129", "32767", "32768",
+      "-32768", "-32769", "2147483647", "2147483648", "-2147483648", "-2147483649",
+      "9223372036854775807", "9223372036854775808", "-9223372036854775808",
+      "-9223372036854775809", "1000000000000000000", "99999999999999999999", "007", "08", "+1",
+      "0.0", "-0.0", "0.00", "-0.00", "0.", ".5", "5.", "1.5", "-1.5", "1.50", "1.0", "100.0",
+      "100.00", "0.001", "0.0001", "0.0000001", "0.1", "0.3", "0.30000000000000004",
+      "1234567.0", "12345678.0", "9999999.0", "1234567.5", "3.14159", "3.141592",
+      "3.1415926", "3.14159265", "3.141592653", "3.14159265358979", "3.141592653589793",
+      "1.0E10", "1e10", "1E-5", "0x1F", "0X1f", "#1F", "1L", "1l", "1.5f", "1.5d", "1.5F", "1D",
+      "true", "TRUE", "False", "yes", "No", "on", "OFF", "y", "n", "t", "f", "F", "d", "e", "E",
+      "abc", "a1", "1a", "--1", "1-", "1.2.3", "1e", "٣", "0٣", "1 2", "é", "ff", "fa1se"
+  })
+  void classifyEdgeCases(String val) {
+    assertSameAsParsing(val);
+  }
+
+  @Test
+  void classifyNull() {
+    assertEquals(ValueType.STRING, ValueTypeClassifier.classify(null));
+  }
+
+  @Test
+  void classifyRange() {
+    assertEquals(ValueType.SHORT, ValueTypeClassifier.classify("load=1000,x", 5, 9));
+    assertEquals(ValueType.FLOAT, ValueTypeClassifier.classify("load=10.5,x", 5, 9));
+    assertEquals(ValueType.BOOLEAN, ValueTypeClassifier.classify("on=True,x", 3, 7));
+  }
+
+  @Test
+  void classifyRandomValues() {
+    Random random = new Random(42);
+    String alphabet = "0123456789.-+eEfFdDlLxXabt ";
+    for (int i = 0; i < 200_000; i++) {
+      String val = switch (i % 8) {
+        case 0 -> Long.toString(random.nextLong() >> random.nextInt(64));
+        case 1 -> Integer.toString(random.nextInt(70_000) - 35_000);
+        case 2 -> Float.toString(Float.intBitsToFloat(random.nextInt()));
+        case 3 -> Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(20) - 8));
+        case 4 -> Double.toString(Double.longBitsToDouble(random.nextLong()));
+        case 5 -> randomDecimal(random);
+        case 6 -> new BigDecimal(random.nextGaussian() * 1e6)
+            .setScale(random.nextInt(12), RoundingMode.HALF_UP).toPlainString();
+        default -> {
+          StringBuilder sb = new StringBuilder();
+          int length = random.nextInt(8);
+          for (int j = 0; j < length; j++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+          }
+          yield sb.toString();
+        }
+      };
+      assertSameAsParsing(val);
+    }
+  }
+
+  private static String randomDecimal(Random random) {
+    StringBuilder sb = new StringBuilder();
+    if (random.nextBoolean()) {
+      sb.append('-');
+    }
+    int intDigits = random.nextInt(10);
+    sb.append(intDigits == 0 ? "0" : Integer.toString(random.nextInt(9) + 1));
+    for (int j = 1; j < intDigits; j++) {
+      sb.append(random.nextInt(10));
+    }
+    sb.append('.');
+    int leadingZeros = random.nextInt(4) == 0 ? random.nextInt(9) : 0;
+    sb.append("0".repeat(leadingZeros));
+    int fracDigits = random.nextInt(18) + 1;
+    for (int j = 0; j < fracDigits; j++) {
+      sb.append(random.nextInt(10));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,141 @@
+package esthesis.common.exception;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(QExceptionTest.StacklessProfile.class)
+class QExceptionTest {
+
+  public static class StacklessProfile implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+      return Map.of(QException.STACKLESS_PROPERTY, "QLimitException");
+    }
+  }
+
+  static class QSpecificMismatchException extends QMismatchException {
+
+    QSpecificMismatchException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * An argument counting how many times it is rendered.
+   */
+  static class CountingArgument {
+
+    final AtomicInteger renders = new AtomicInteger();
+
+    @Override
+    public String toString() {
+      renders.incrementAndGet();
+      return "argument";
+    }
+  }
+
+  @Test
+  void formatMessageLazily() {
+    CountingArgument argument = new CountingArgument();
+    QMismatchException e = new QMismatchException("Invalid {} at {}.", argument, 3);
+    assertEquals(0, argument.renders.get());
+
+    assertEquals("Invalid argument at 3.", e.getMessage());
+    assertEquals("Invalid argument at 3.", e.getMessage());
+    assertEquals(1, argument.renders.get());
+  }
+
+  @Test
+  void keepMessagesWithoutArguments() {
+    assertEquals("Invalid {}.", new QMismatchException("Invalid {}.").getMessage());
+    assertEquals("Limit of 5 reached.", new QLimitException("Limit of {} reached.", 5)
+        .getMessage());
+  }
+
+  @Test
+  void formatMessageBeforeSerialization() throws IOException, ClassNotFoundException {
+    CountingArgument argument = new CountingArgument();
+    QMismatchException e = new QMismatchException("Invalid {}.", argument);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(e);
+    }
+    assertEquals(1, argument.renders.get());
+    QMismatchException copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (QMismatchException) in.readObject();
+    }
+
+    assertEquals("Invalid argument.", copy.getMessage());
+  }
+
+  @Test
+  void parseStacklessTypes() {
+    assertEquals(Set.of(), QException.parseStacklessTypes(""));
+    assertEquals(Set.of("true"), QException.parseStacklessTypes(" true "));
+    assertEquals(Set.of("QMismatchException", "esthesis.common.exception.QLimitException"),
+        QException.parseStacklessTypes(
+            "QMismatchException, esthesis.common.exception.QLimitException,,"));
+  }
+
+  @Test
+  void makeAllExceptionsStackless() {
+    Set<String> configured = QException.parseStacklessTypes("true");
+    assertTrue(QException.isStackless(QMismatchException.class, configured));
+    assertTrue(QException.isStackless(QLimitException.class, configured));
+  }
+
+  @Test
+  void makeListedExceptionsStackless() {
+    Set<String> configured = QException.parseStacklessTypes(
+        "QMismatchException,esthesis.common.exception.QLimitException");
+    assertTrue(QException.isStackless(QMismatchException.class, configured));
+    assertTrue(QException.isStackless(QLimitException.class, configured));
+    assertFalse(QException.isStackless(QDoesNotExistException.class, configured));
+    assertFalse(QException.isStackless(QMismatchException.class, Set.of()));
+  }
+
+  @Test
+  void makeSubclassesOfListedExceptionsStackless() {
+    assertTrue(QException.isStackless(QSpecificMismatchException.class,
+        QException.parseStacklessTypes("QMismatchException")));
+    assertTrue(QException.isStackless(QSpecificMismatchException.class,
+        QException.parseStacklessTypes("esthesis.common.exception.QMismatchException")));
+    assertFalse(QException.isStackless(QMismatchException.class,
+        QException.parseStacklessTypes("QSpecificMismatchException")));
+  }
+
+  @Test
+  void makeConfiguredExceptionsStackless() {
+    assertEquals(0, new QLimitException("Limit reached.").getStackTrace().length);
+    assertEquals(0, new QLimitException("Limit of {} reached.", 5).getStackTrace().length);
+    assertTrue(new QMismatchException("with stack").getStackTrace().length > 0);
+  }
+
+  @Test
+  void makeSingleExceptionStackless() {
+    assertEquals(0, new QMismatchException("stackless", null, false, false)
+        .getStackTrace().length);
+    assertEquals(0, new QAuthenticationException("stackless", null, false, false)
+        .getStackTrace().length);
+    assertTrue(new QMismatchException("with stack").getStackTrace().length > 0);
+  }
+}
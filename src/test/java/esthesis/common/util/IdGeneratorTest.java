@@ -0,0 +1,46 @@
+package esthesis.common.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import esthesis.common.util.IdGenerator.Strategy;
+import io.quarkus.test.junit.QuarkusTest;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class IdGeneratorTest {
+
+  @Test
+  void generateTimeOrderedIds() {
+    long before = System.currentTimeMillis();
+    UUID first = IdGenerator.uuid7();
+    assertEquals(7, first.version());
+    assertEquals(2, first.variant());
+    assertTrue((first.getMostSignificantBits() >>> 16) >= before);
+
+    // UUIDs generated by a thread sort in the order they were generated, also as strings.
+    String previous = first.toString();
+    for (int i = 0; i < 100_000; i++) {
+      String next = IdGenerator.nextId(Strategy.UUID7);
+      assertTrue(next.compareTo(previous) > 0, next);
+      previous = next;
+    }
+  }
+
+  @Test
+  void generateUniqueIdsAcrossThreads() {
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    IntStream.range(0, 200_000).parallel()
+        .forEach(i -> ids.add(IdGenerator.nextId(Strategy.UUID7)));
+    assertEquals(200_000, ids.size());
+  }
+
+  @Test
+  void generateRandomIds() {
+    assertEquals(4, UUID.fromString(IdGenerator.nextId(Strategy.RANDOM)).version());
+  }
+}